@@ -2,26 +2,37 @@ package com.redis.fulltextsearchandautocomplete;
 
 import com.redis.fulltextsearchandautocomplete.service.MovieService;
 import com.redis.om.spring.annotations.EnableRedisDocumentRepositories;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableRedisDocumentRepositories
+@EnableScheduling
 public class FullTextSearchAndAutocompleteApplication {
     public static void main(String[] args) {
         SpringApplication.run(FullTextSearchAndAutocompleteApplication.class, args);
     }
 
     @Bean
-    CommandLineRunner loadData(MovieService movieService) {
+    CommandLineRunner loadData(MovieService movieService, @Value("${movies.load.mode:repository}") String loadMode) {
         return args -> {
+            if ("incremental".equals(loadMode)) {
+                movieService.syncMovies("movies.json");
+                return;
+            }
             if (movieService.isDataLoaded()) {
                 System.out.println("Data already loaded. Skipping data load.");
                 return;
             }
-            movieService.loadAndSaveMovies("movies.json");
+            if ("streaming".equals(loadMode)) {
+                movieService.streamAndSaveMovies("movies.json");
+            } else {
+                movieService.loadAndSaveMovies("movies.json");
+            }
         };
     }
 }
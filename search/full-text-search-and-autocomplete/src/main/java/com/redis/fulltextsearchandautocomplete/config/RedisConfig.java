@@ -0,0 +1,49 @@
+package com.redis.fulltextsearchandautocomplete.config;
+
+import com.redis.om.spring.RedisOMProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import redis.clients.jedis.*;
+
+@Configuration
+public class RedisConfig {
+
+    /**
+     * Plain Jedis client sharing the connection settings of Redis OM Spring. Used for the
+     * pipelined bulk loader, FT.AGGREGATE cursors, the index generations and alias of the
+     * reindex, and the autocomplete analytics, none of which the repositories expose.
+     */
+    @Bean(destroyMethod = "close")
+    public JedisPooled jedisPooled(JedisConnectionFactory jedisConnectionFactory) {
+        JedisClientConfiguration cc = jedisConnectionFactory.getClientConfiguration();
+        HostAndPort hostAndPort = new HostAndPort(jedisConnectionFactory.getHostName(), jedisConnectionFactory.getPort());
+        RedisStandaloneConfiguration standaloneConfig = jedisConnectionFactory.getStandaloneConfiguration();
+
+        DefaultJedisClientConfig.Builder jedisConfigBuilder = DefaultJedisClientConfig.builder()
+                .connectionTimeoutMillis((int) cc.getConnectTimeout().toMillis())
+                .socketTimeoutMillis((int) cc.getReadTimeout().toMillis())
+                .database(jedisConnectionFactory.getDatabase())
+                .clientSetInfoConfig(ClientSetInfoConfig.withLibNameSuffix("redis-om-spring_v" + RedisOMProperties.ROMS_VERSION));
+
+        cc.getClientName().ifPresent(jedisConfigBuilder::clientName);
+
+        if (standaloneConfig != null) {
+            if (standaloneConfig.getUsername() != null && !standaloneConfig.getUsername().isEmpty()) {
+                jedisConfigBuilder.user(standaloneConfig.getUsername());
+            }
+            standaloneConfig.getPassword().toOptional().map(String::new).ifPresent(jedisConfigBuilder::password);
+        }
+
+        if (cc.isUseSsl()) {
+            jedisConfigBuilder.ssl(true);
+            cc.getSslSocketFactory().ifPresent(jedisConfigBuilder::sslSocketFactory);
+            cc.getHostnameVerifier().ifPresent(jedisConfigBuilder::hostnameVerifier);
+            cc.getSslParameters().ifPresent(jedisConfigBuilder::sslParameters);
+        }
+
+        return new JedisPooled(hostAndPort, jedisConfigBuilder.build());
+    }
+}
@@ -0,0 +1,44 @@
+package com.redis.fulltextsearchandautocomplete.controller;
+
+import com.redis.fulltextsearchandautocomplete.repository.MovieKeyspace;
+import com.redis.fulltextsearchandautocomplete.service.ReindexService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+public class ReindexController {
+
+    private final ReindexService reindexService;
+    private final MovieKeyspace keyspace;
+
+    public ReindexController(ReindexService reindexService, MovieKeyspace keyspace) {
+        this.reindexService = reindexService;
+        this.keyspace = keyspace;
+    }
+
+    @PostMapping("/reindex")
+    public ResponseEntity<Object> reindex() {
+        if (!reindexService.startReindex("movies.json")) {
+            return ResponseEntity
+                    .status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", "A reindex is already running."));
+        }
+        return ResponseEntity
+                .status(HttpStatus.ACCEPTED)
+                .body(Map.of("status", "started", "liveGeneration", keyspace.generation()));
+    }
+
+    @GetMapping("/reindex")
+    public Map<String, Object> status() {
+        return Map.of(
+                "running", reindexService.isRunning(),
+                "liveGeneration", keyspace.generation(),
+                "liveIndex", keyspace.indexNameFor(keyspace.generation())
+        );
+    }
+}
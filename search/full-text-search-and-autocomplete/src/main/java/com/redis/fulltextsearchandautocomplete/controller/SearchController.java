@@ -1,11 +1,19 @@
 package com.redis.fulltextsearchandautocomplete.controller;
 
-import com.redis.fulltextsearchandautocomplete.repository.MovieRepository;
+import com.redis.fulltextsearchandautocomplete.domain.SuggestionSelection;
+import com.redis.fulltextsearchandautocomplete.service.AutocompleteService;
+import com.redis.fulltextsearchandautocomplete.service.SearchResultCache;
 import com.redis.fulltextsearchandautocomplete.service.SearchService;
+import com.redis.fulltextsearchandautocomplete.service.SuggestionAnalyticsService;
+import com.redis.fulltextsearchandautocomplete.service.TagVocabularyService;
 import com.redis.om.spring.autocomplete.Suggestion;
-import com.redis.om.spring.repository.query.autocomplete.AutoCompleteOptions;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -18,19 +26,30 @@ import java.util.Set;
 public class SearchController {
 
     private final SearchService searchService;
-    private final MovieRepository movieRepository;
-
-    public SearchController(SearchService searchService, MovieRepository movieRepository) {
+    private final AutocompleteService autocompleteService;
+    private final TagVocabularyService tagVocabularyService;
+    private final SearchResultCache searchResultCache;
+    private final SuggestionAnalyticsService suggestionAnalyticsService;
+
+    public SearchController(
+            SearchService searchService,
+            AutocompleteService autocompleteService,
+            TagVocabularyService tagVocabularyService,
+            SearchResultCache searchResultCache,
+            SuggestionAnalyticsService suggestionAnalyticsService
+    ) {
         this.searchService = searchService;
-        this.movieRepository = movieRepository;
+        this.autocompleteService = autocompleteService;
+        this.tagVocabularyService = tagVocabularyService;
+        this.searchResultCache = searchResultCache;
+        this.suggestionAnalyticsService = suggestionAnalyticsService;
     }
 
     @GetMapping("/search/{q}")
     public Map<String, Object> query(@PathVariable("q") String query) {
         long startTime = System.currentTimeMillis();
 
-        List<Suggestion> suggestions = movieRepository
-                .autoCompleteTitle(query, AutoCompleteOptions.get().withPayload());
+        List<Suggestion> suggestions = autocompleteService.suggest(query);
 
         long endTime = System.currentTimeMillis();
         long autocompleteTime = endTime - startTime;
@@ -38,19 +57,93 @@ public class SearchController {
         Map<String, Object> result = new HashMap<>();
         result.put("suggestions", suggestions);
         result.put("autocompleteTime", autocompleteTime);
+        result.put("source", autocompleteService.isLocal() ? "local" : "redis");
 
         return result;
     }
 
+    @PostMapping("/suggestions/selections")
+    public ResponseEntity<Void> recordSelection(@RequestBody SuggestionSelection selection) {
+        if (selection.title() == null || selection.title().isBlank()) {
+            throw new IllegalArgumentException("title is required");
+        }
+        suggestionAnalyticsService.recordSelection(selection.prefix(), selection.title());
+        return ResponseEntity.accepted().build();
+    }
+
     @GetMapping("/search")
     public Map<String, Object> searchByExtract(
+            @RequestParam(required = false) String title,
+            @RequestParam(required = false) String text,
+            @RequestParam(required = false) List<String> cast,
+            @RequestParam(required = false) Integer year,
+            @RequestParam(required = false) List<String> genres,
+            @RequestParam(defaultValue = "50") int pageSize,
+            @RequestParam(required = false) String pageToken,
+            @RequestParam(defaultValue = "false") boolean highlight
+    ) {
+        if (pageToken == null) {
+            suggestionAnalyticsService.recordQuery(title);
+        }
+        return searchService.searchByExtractAndCast(title, text, cast, year, genres, pageSize, pageToken, highlight);
+    }
+
+    @GetMapping("/facets")
+    public Map<String, Object> facetedSearch(
+            @RequestParam(required = false) String title,
+            @RequestParam(required = false) String text,
+            @RequestParam(required = false) List<String> cast,
+            @RequestParam(required = false) Integer year,
+            @RequestParam(required = false) List<String> genres,
+            @RequestParam(defaultValue = "50") int pageSize,
+            @RequestParam(required = false) String pageToken,
+            @RequestParam(defaultValue = "false") boolean highlight
+    ) {
+        return searchService.facetedSearch(title, text, cast, year, genres, pageSize, pageToken, highlight);
+    }
+
+    @GetMapping("/count")
+    public Map<String, Object> count(
+            @RequestParam(required = false) String title,
+            @RequestParam(required = false) String text,
+            @RequestParam(required = false) List<String> cast,
+            @RequestParam(required = false) Integer year,
+            @RequestParam(required = false) List<String> genres
+    ) {
+        long startTime = System.currentTimeMillis();
+
+        long count = searchService.count(title, text, cast, year, genres);
+
+        long endTime = System.currentTimeMillis();
+        long searchTime = endTime - startTime;
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("count", count);
+        result.put("searchTime", searchTime);
+
+        return result;
+    }
+
+    @GetMapping("/exists")
+    public Map<String, Object> exists(
             @RequestParam(required = false) String title,
             @RequestParam(required = false) String text,
             @RequestParam(required = false) List<String> cast,
             @RequestParam(required = false) Integer year,
             @RequestParam(required = false) List<String> genres
     ) {
-        return searchService.searchByExtractAndCast(title, text, cast, year, genres);
+        long startTime = System.currentTimeMillis();
+
+        boolean exists = searchService.exists(title, text, cast, year, genres);
+
+        long endTime = System.currentTimeMillis();
+        long searchTime = endTime - startTime;
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("exists", exists);
+        result.put("searchTime", searchTime);
+
+        return result;
     }
 
     @GetMapping("/genres")
@@ -66,7 +159,40 @@ public class SearchController {
         result.put("genres", genres);
         result.put("count", genres.size());
         result.put("fetchTime", fetchTime);
+        if (tagVocabularyService.isReady()) {
+            result.put("counts", tagVocabularyService.getGenreCounts());
+        }
 
         return result;
     }
+
+    @GetMapping("/actors")
+    public Map<String, Object> getAllActors() {
+        long startTime = System.currentTimeMillis();
+
+        Map<String, Long> castCounts = tagVocabularyService.getCastCounts();
+
+        long endTime = System.currentTimeMillis();
+        long fetchTime = endTime - startTime;
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("actors", castCounts.keySet());
+        result.put("count", castCounts.size());
+        result.put("counts", castCounts);
+        result.put("fetchTime", fetchTime);
+
+        return result;
+    }
+
+    @GetMapping("/cache/stats")
+    public Map<String, Object> cacheStats() {
+        return searchResultCache.stats();
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Object> badRequest(IllegalArgumentException e) {
+        return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(Map.of("error", e.getMessage()));
+    }
 }
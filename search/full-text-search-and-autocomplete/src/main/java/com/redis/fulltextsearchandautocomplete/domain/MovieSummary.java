@@ -0,0 +1,17 @@
+package com.redis.fulltextsearchandautocomplete.domain;
+
+import java.util.List;
+
+/**
+ * The subset of {@link Movie} fields rendered by the search result list.
+ */
+public record MovieSummary(
+        String id,
+        String title,
+        int year,
+        List<String> cast,
+        List<String> genres,
+        String thumbnail,
+        String extract
+) {
+}
@@ -0,0 +1,7 @@
+package com.redis.fulltextsearchandautocomplete.domain;
+
+/**
+ * An autocomplete suggestion the user picked, along with the prefix they had typed.
+ */
+public record SuggestionSelection(String prefix, String title) {
+}
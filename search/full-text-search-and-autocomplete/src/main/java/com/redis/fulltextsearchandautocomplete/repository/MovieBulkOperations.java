@@ -0,0 +1,249 @@
+package com.redis.fulltextsearchandautocomplete.repository;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redis.fulltextsearchandautocomplete.domain.Movie;
+import org.springframework.stereotype.Repository;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.json.Path2;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+import redis.clients.jedis.search.FieldName;
+import redis.clients.jedis.search.Query;
+import redis.clients.jedis.search.SearchProtocol;
+import redis.clients.jedis.search.aggr.AggregationBuilder;
+import redis.clients.jedis.search.aggr.AggregationResult;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+
+/**
+ * Pipelined writes of {@link Movie} documents, producing the same JSON document and title
+ * suggestion that {@link MovieRepository#saveAll} would, in a single round trip per batch,
+ * plus cursor-based reads over the whole index.
+ */
+@Repository
+public class MovieBulkOperations {
+
+    private static final int SCAN_PAGE_SIZE = 1000;
+    private static final long SCAN_MAX_IDLE_MILLIS = 30_000;
+
+    private final JedisPooled jedis;
+    private final MovieKeyspace keyspace;
+    private final ObjectMapper objectMapper;
+
+    public MovieBulkOperations(JedisPooled jedis, MovieKeyspace keyspace, ObjectMapper objectMapper) {
+        this.jedis = jedis;
+        this.keyspace = keyspace;
+        // Leave unset fields out of the document, like Redis OM Spring does
+        this.objectMapper = objectMapper.copy().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    }
+
+    /**
+     * Derives a stable id from title and year, so that loading the same catalog twice
+     * overwrites documents instead of duplicating them. Every load mode assigns it.
+     */
+    public static String idFor(Movie movie) {
+        String natural = naturalKey(movie.getTitle(), Integer.toString(movie.getYear()));
+        return UUID.nameUUIDFromBytes(natural.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * Title and year, which identify a movie in the catalog whatever id it was stored under.
+     */
+    public static String naturalKey(String title, String year) {
+        return title + "|" + year;
+    }
+
+    /**
+     * SHA-256 of the JSON document {@link #saveAll} writes for this movie, assigning its id if needed.
+     */
+    public String contentHash(Movie movie) {
+        if (movie.getId() == null) {
+            movie.setId(idFor(movie));
+        }
+        return sha256(toJson(movie));
+    }
+
+    /**
+     * Content hashes recorded for the given ids, in the same order; null where none is recorded.
+     */
+    public List<String> storedContentHashes(List<String> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return jedis.hmget(keyspace.contentHashesKey(), ids.toArray(String[]::new));
+    }
+
+    public void saveAll(List<Movie> movies) {
+        Lock lock = keyspace.liveWriteLock();
+        lock.lock();
+        try {
+            saveAll(movies, keyspace.keyPrefix(), keyspace.titleSuggestionKey());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes under an explicit key prefix and suggestion dictionary, for building a new
+     * index generation next to the live one.
+     */
+    public void saveAll(List<Movie> movies, String keyPrefix, String suggestionKey) {
+        String contentHashesKey = keyspace.contentHashesKey();
+        Map<String, Double> picks = pickCounts(movies);
+        try (Pipeline pipeline = jedis.pipelined()) {
+            for (Movie movie : movies) {
+                if (movie.getId() == null) {
+                    movie.setId(idFor(movie));
+                }
+                String json = toJson(movie);
+                pipeline.jsonSet(keyPrefix + movie.getId(), Path2.ROOT_PATH, json);
+                pipeline.hset(contentHashesKey, movie.getId(), sha256(json));
+                if (movie.getTitle() != null) {
+                    addTitleSuggestion(pipeline, suggestionKey, movie, picks.getOrDefault(movie.getTitle(), 0.0));
+                }
+            }
+            pipeline.sync();
+        }
+    }
+
+    /**
+     * Removes the documents, their content hashes and their title suggestions. Suggestions are
+     * shared by every movie with the same title, so titles in {@code titlesInUse} are kept.
+     */
+    public void deleteAll(List<Movie> movies, Set<String> titlesInUse) {
+        String suggestionKey = keyspace.titleSuggestionKey();
+        String contentHashesKey = keyspace.contentHashesKey();
+        Lock lock = keyspace.liveWriteLock();
+        lock.lock();
+        try (Pipeline pipeline = jedis.pipelined()) {
+            for (Movie movie : movies) {
+                pipeline.unlink(keyspace.key(movie.getId()));
+                pipeline.hdel(contentHashesKey, movie.getId());
+                if (movie.getTitle() != null && !titlesInUse.contains(movie.getTitle())) {
+                    pipeline.ftSugDel(suggestionKey, movie.getTitle());
+                }
+            }
+            pipeline.sync();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of movies in the live index generation. LIMIT 0 0 makes FT.SEARCH return the
+     * total only.
+     */
+    public long count() {
+        return jedis.ftSearch(keyspace.indexName(), new Query("*").limit(0, 0)).getTotalResults();
+    }
+
+    /**
+     * Unlinks every key under the prefix in SCAN-sized batches, pausing between batches so the
+     * cleanup of a retired generation does not compete with live traffic.
+     */
+    public long unlinkByPrefix(String keyPrefix, long pauseMillis) throws InterruptedException {
+        ScanParams scanParams = new ScanParams().match(keyPrefix + "*").count(SCAN_PAGE_SIZE);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        long unlinked = 0;
+        do {
+            ScanResult<String> page = jedis.scan(cursor, scanParams);
+            if (!page.getResult().isEmpty()) {
+                unlinked += jedis.unlink(page.getResult().toArray(String[]::new));
+                Thread.sleep(pauseMillis);
+            }
+            cursor = page.getCursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        return unlinked;
+    }
+
+    /**
+     * Walks every indexed movie with an FT.AGGREGATE cursor, loading only the given JSON paths.
+     * Each row carries the movie id under {@code "id"} and every path under its alias.
+     */
+    public void forEachDocument(List<FieldName> fields, Consumer<Map<String, Object>> consumer) {
+        String indexName = keyspace.indexName();
+
+        FieldName[] load = new FieldName[fields.size() + 1];
+        load[0] = FieldName.of("@__key");
+        for (int i = 0; i < fields.size(); i++) {
+            load[i + 1] = fields.get(i);
+        }
+
+        AggregationResult page = jedis.ftAggregate(indexName, new AggregationBuilder("*")
+                .load(load)
+                .cursor(SCAN_PAGE_SIZE, SCAN_MAX_IDLE_MILLIS));
+        while (true) {
+            for (Map<String, Object> row : page.getResults()) {
+                Map<String, Object> document = new HashMap<>(row);
+                Object key = document.remove("__key");
+                if (key != null) {
+                    document.put("id", MovieKeyspace.idFromKey(key.toString()));
+                }
+                consumer.accept(document);
+            }
+            if (page.getCursorId() == 0) {
+                return;
+            }
+            page = jedis.ftCursorRead(indexName, page.getCursorId(), SCAN_PAGE_SIZE);
+        }
+    }
+
+    /**
+     * Cumulative autocomplete picks of the titles, so rewriting a suggestion keeps its score.
+     */
+    private Map<String, Double> pickCounts(List<Movie> movies) {
+        List<String> titles = movies.stream().map(Movie::getTitle).filter(Objects::nonNull).distinct().toList();
+        if (titles.isEmpty()) {
+            return Map.of();
+        }
+        List<Double> scores = jedis.zmscore(keyspace.titlePopularityKey(), titles.toArray(String[]::new));
+        Map<String, Double> picks = new HashMap<>();
+        for (int i = 0; i < titles.size(); i++) {
+            if (scores.get(i) != null) {
+                picks.put(titles.get(i), scores.get(i));
+            }
+        }
+        return picks;
+    }
+
+    /**
+     * Plain SUGADD replaces the score, so it is written as the default score plus the
+     * title's picks, the same score re-scoring maintains.
+     */
+    private void addTitleSuggestion(Pipeline pipeline, String suggestionKey, Movie movie, double picks) {
+        String score = Double.toString(1.0 + picks);
+        if (movie.getExtract() == null) {
+            pipeline.sendCommand(SearchProtocol.SearchCommand.SUGADD, suggestionKey, movie.getTitle(), score);
+            return;
+        }
+        // Same payload layout as @AutoCompletePayload("title") on Movie.extract
+        String payload = toJson(Map.of("extract", movie.getExtract()));
+        pipeline.sendCommand(SearchProtocol.SearchCommand.SUGADD, suggestionKey, movie.getTitle(), score,
+                "PAYLOAD", payload);
+    }
+
+    private static String sha256(String json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not serialize " + value, e);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.redis.fulltextsearchandautocomplete.repository;
+
+import com.redis.fulltextsearchandautocomplete.domain.Movie;
+import com.redis.om.spring.indexing.RediSearchIndexer;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.Locale;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Names of the Redis structures holding {@link Movie}s, for the code paths that talk to Redis
+ * directly instead of going through {@link MovieRepository}.
+ * <p>
+ * Generation 0 is the index and key prefix Redis OM Spring creates for {@link Movie}. Every
+ * reindex builds generation n under its own index and prefix and then points the
+ * {@link #indexName() alias} at it, so readers never see a half-built index. Writes to the
+ * live generation hold the {@link #liveWriteLock() shared lock}, and the swap holds the
+ * {@link #swapLock() exclusive one}, so no write lands in a generation that is being retired.
+ */
+@Component
+public class MovieKeyspace {
+
+    private final RediSearchIndexer indexer;
+    private final JedisPooled jedis;
+    private volatile long generation = -1;
+    private volatile boolean aliasChecked;
+    private final ReadWriteLock swap = new ReentrantReadWriteLock();
+
+    public MovieKeyspace(RediSearchIndexer indexer, JedisPooled jedis) {
+        this.indexer = indexer;
+        this.jedis = jedis;
+    }
+
+    /**
+     * @return the alias every query should go through
+     */
+    public String indexName() {
+        if (!aliasChecked) {
+            ensureAlias();
+        }
+        return aliasName();
+    }
+
+    /**
+     * @return the key prefix new documents are written under
+     */
+    public String keyPrefix() {
+        return keyPrefixFor(generation());
+    }
+
+    public String key(String id) {
+        return keyPrefix() + id;
+    }
+
+    /**
+     * @return the id part of a document key of any generation
+     */
+    public static String idFromKey(String key) {
+        return key.substring(key.lastIndexOf(':') + 1);
+    }
+
+    public String titleSuggestionKey() {
+        return "sugg:" + Movie.class.getSimpleName() + ":title";
+    }
+
+    /**
+     * Hash of movie id to the SHA-256 of the JSON document last written for it.
+     */
+    public String contentHashesKey() {
+        return "sync:" + Movie.class.getSimpleName() + ":content-hashes";
+    }
+
+    /**
+     * Sorted set of titles picked from autocomplete since the last re-scoring run.
+     */
+    public String pendingSelectionsKey() {
+        return "analytics:" + Movie.class.getSimpleName() + ":selections:pending";
+    }
+
+    /**
+     * Sorted set of every title ever picked from autocomplete, scored by number of picks.
+     */
+    public String titlePopularityKey() {
+        return "analytics:" + Movie.class.getSimpleName() + ":popularity";
+    }
+
+    /**
+     * Sorted set of typed prefixes and search queries, scored by how often they were used.
+     */
+    public String prefixUsageKey() {
+        return "analytics:" + Movie.class.getSimpleName() + ":prefixes";
+    }
+
+    /**
+     * @return the lock to hold while writing to the live generation, shared between writers
+     */
+    public Lock liveWriteLock() {
+        return swap.readLock();
+    }
+
+    /**
+     * @return the lock a reindex holds while it makes another generation live
+     */
+    public Lock swapLock() {
+        return swap.writeLock();
+    }
+
+    public long generation() {
+        if (generation < 0) {
+            String live = jedis.get(liveGenerationKey());
+            generation = live == null ? 0 : Long.parseLong(live);
+        }
+        return generation;
+    }
+
+    public String aliasName() {
+        return Movie.class.getSimpleName().toLowerCase() + "s";
+    }
+
+    public String indexNameFor(long generation) {
+        String baseIndexName = indexer.getIndexName(Movie.class);
+        return generation == 0 ? baseIndexName : baseIndexName + "-v" + generation;
+    }
+
+    public String keyPrefixFor(long generation) {
+        String basePrefix = indexer.getKeyspaceForEntityClass(Movie.class);
+        if (generation == 0) {
+            return basePrefix;
+        }
+        // Must not start with the base prefix, or the base index would pick these documents up too
+        String baseName = basePrefix.endsWith(":") ? basePrefix.substring(0, basePrefix.length() - 1) : basePrefix;
+        return baseName + "-v" + generation + ":";
+    }
+
+    public String generationCounterKey() {
+        return "reindex:" + Movie.class.getSimpleName() + ":generations";
+    }
+
+    public String liveGenerationKey() {
+        return "reindex:" + Movie.class.getSimpleName() + ":live";
+    }
+
+    /**
+     * Records generation n as live once the alias points at its index.
+     */
+    public void promote(long generation) {
+        jedis.set(liveGenerationKey(), Long.toString(generation));
+        this.generation = generation;
+    }
+
+    private synchronized void ensureAlias() {
+        if (aliasChecked) {
+            return;
+        }
+        try {
+            jedis.ftAliasAdd(aliasName(), indexNameFor(generation()));
+        } catch (JedisDataException e) {
+            // An existing alias points at the live generation, anything else is retried on the next call
+            if (e.getMessage() == null || !e.getMessage().toLowerCase(Locale.ROOT).contains("alias already exists")) {
+                throw e;
+            }
+        }
+        aliasChecked = true;
+    }
+}
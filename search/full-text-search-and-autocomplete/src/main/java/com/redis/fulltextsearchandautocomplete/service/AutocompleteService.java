@@ -0,0 +1,343 @@
+package com.redis.fulltextsearchandautocomplete.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redis.fulltextsearchandautocomplete.domain.Movie;
+import com.redis.fulltextsearchandautocomplete.repository.MovieBulkOperations;
+import com.redis.fulltextsearchandautocomplete.repository.MovieKeyspace;
+import com.redis.fulltextsearchandautocomplete.repository.MovieRepository;
+import com.redis.om.spring.autocomplete.Suggestion;
+import com.redis.om.spring.repository.query.autocomplete.AutoCompleteOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.search.FieldName;
+import redis.clients.jedis.search.SearchProtocol;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Answers title autocomplete from an in-JVM prefix index when it is enabled and built,
+ * and from the FT.SUGGET dictionary otherwise.
+ * <p>
+ * The local index is seeded from the movie index at startup and after every reindex (the
+ * suggestion dictionary itself cannot be enumerated) and follows {@link MoviesChangedEvent}s
+ * in between. Events that arrive while a rebuild is running are applied to the current index
+ * and replayed on the new one before it is swapped in. Until the index has been built from
+ * the live index generation, for instance between a reindex swap and the rebuild it
+ * triggers, or after an event could not be applied, suggestions come from Redis.
+ * Entries are keyed by lower-cased title, so a prefix lookup is a range scan on a
+ * sorted map, matching FT.SUGGET's case-insensitive prefix semantics. Matches are ranked
+ * by how often each title was picked, and the hottest prefixes are answered from a
+ * precomputed list.
+ * <p>
+ * Only picked titles have a score, every other match ties at zero. Ranking therefore walks
+ * the picked titles, most picked first, and only fills the remaining places with the
+ * alphabetically first matches, so a popular title is found however many titles share its
+ * prefix.
+ */
+@Service
+public class AutocompleteService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AutocompleteService.class);
+    private static final int MAX_SUGGESTIONS = 5;
+    private static final int MAX_DICTIONARY_MATCHES = 200;
+    private static final char ID_SEPARATOR = '\u0000';
+
+    private final MovieRepository movieRepository;
+    private final MovieBulkOperations movieBulkOperations;
+    private final JedisPooled jedis;
+    private final MovieKeyspace keyspace;
+    private final ObjectMapper objectMapper;
+    private final boolean nearCacheEnabled;
+
+    private volatile ConcurrentNavigableMap<String, Suggestion> prefixIndex = new ConcurrentSkipListMap<>();
+    private volatile Map<String, String> indexKeyById = new ConcurrentHashMap<>();
+    private volatile List<PickedTitle> pickedTitles = List.of();
+    private volatile Map<String, List<Suggestion>> warmPrefixes = Map.of();
+    private volatile boolean ready;
+    private volatile long builtGeneration = -1;
+
+    private final Object eventLock = new Object();
+    // Events to replay on the index being rebuilt, null when no rebuild is running
+    private List<MoviesChangedEvent> eventsDuringRebuild;
+
+    public AutocompleteService(
+            MovieRepository movieRepository,
+            MovieBulkOperations movieBulkOperations,
+            JedisPooled jedis,
+            MovieKeyspace keyspace,
+            ObjectMapper objectMapper,
+            @Value("${autocomplete.near-cache.enabled:true}") boolean nearCacheEnabled
+    ) {
+        this.movieRepository = movieRepository;
+        this.movieBulkOperations = movieBulkOperations;
+        this.jedis = jedis;
+        this.keyspace = keyspace;
+        this.objectMapper = objectMapper;
+        this.nearCacheEnabled = nearCacheEnabled;
+    }
+
+    public List<Suggestion> suggest(String query) {
+        if (!isLocal()) {
+            return movieRepository.autoCompleteTitle(query, AutoCompleteOptions.get().withPayload());
+        }
+
+        String prefix = query.toLowerCase(Locale.ROOT);
+        List<Suggestion> warm = warmPrefixes.get(prefix);
+        return warm != null ? warm : rank(prefix);
+    }
+
+    /**
+     * Looks the exact titles up in the local prefix index, or in the suggestion dictionary
+     * with one pipeline of FT.SUGGET when it is not built.
+     *
+     * @return the autocomplete payload of every title that is in the catalog, empty for titles
+     * stored without one; titles that are not in the catalog are left out
+     */
+    public Map<String, Map<String, Object>> payloadsFor(Collection<String> titles) {
+        Map<String, Map<String, Object>> payloads = new HashMap<>();
+        if (isLocal()) {
+            for (String title : titles) {
+                find(title).ifPresent(suggestion -> payloads.put(title, payloadOf(suggestion)));
+            }
+            return payloads;
+        }
+
+        List<String> distinctTitles = List.copyOf(new LinkedHashSet<>(titles));
+        List<Response<Object>> replies = new ArrayList<>(distinctTitles.size());
+        try (Pipeline pipeline = jedis.pipelined()) {
+            for (String title : distinctTitles) {
+                replies.add(pipeline.sendCommand(SearchProtocol.SearchCommand.SUGGET, keyspace.titleSuggestionKey(), title,
+                        "MAX", Integer.toString(MAX_DICTIONARY_MATCHES), "WITHPAYLOADS"));
+            }
+            pipeline.sync();
+        }
+        for (int i = 0; i < distinctTitles.size(); i++) {
+            String title = distinctTitles.get(i);
+            // Suggestions and their payloads alternate in the reply
+            if (replies.get(i).get() instanceof List<?> reply) {
+                for (int j = 0; j + 1 < reply.size(); j += 2) {
+                    if (title.equals(SafeEncoder.encode((byte[]) reply.get(j)))) {
+                        payloads.put(title, parsePayload((byte[]) reply.get(j + 1)));
+                        break;
+                    }
+                }
+            }
+        }
+        return payloads;
+    }
+
+    /**
+     * Replaces the per-title pick counts used for ranking and precomputes the answers
+     * for the given hot prefixes.
+     */
+    public void applyPopularity(Map<String, Double> titlePopularity, Collection<String> hotPrefixes) {
+        pickedTitles = titlePopularity.entrySet().stream()
+                .filter(entry -> entry.getValue() > 0)
+                .map(entry -> new PickedTitle(entry.getKey(), entry.getKey().toLowerCase(Locale.ROOT), entry.getValue()))
+                .sorted(Comparator.comparingDouble(PickedTitle::picks).reversed().thenComparing(PickedTitle::lowerCase))
+                .toList();
+        if (!isLocal()) {
+            return;
+        }
+        Map<String, List<Suggestion>> warm = new HashMap<>();
+        for (String hotPrefix : hotPrefixes) {
+            String prefix = hotPrefix.toLowerCase(Locale.ROOT);
+            warm.put(prefix, rank(prefix));
+        }
+        warmPrefixes = warm;
+    }
+
+    private record PickedTitle(String title, String lowerCase, double picks) {
+    }
+
+    private List<Suggestion> rank(String prefix) {
+        // The suggestion dictionary holds one entry per distinct title
+        Map<String, Suggestion> ranked = new LinkedHashMap<>();
+        for (PickedTitle picked : pickedTitles) {
+            if (ranked.size() == MAX_SUGGESTIONS) {
+                return List.copyOf(ranked.values());
+            }
+            if (picked.lowerCase().startsWith(prefix)) {
+                find(picked.title()).ifPresent(suggestion -> ranked.put(picked.title(), suggestion));
+            }
+        }
+        for (Map.Entry<String, Suggestion> entry : prefixIndex.tailMap(prefix).entrySet()) {
+            if (ranked.size() == MAX_SUGGESTIONS || !entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            ranked.putIfAbsent(entry.getValue().getValue(), entry.getValue());
+        }
+        return List.copyOf(ranked.values());
+    }
+
+    /**
+     * @return the entry of exactly this title, if any movie has it
+     */
+    private Optional<Suggestion> find(String title) {
+        String titleKey = title.toLowerCase(Locale.ROOT) + ID_SEPARATOR;
+        for (Map.Entry<String, Suggestion> entry : prefixIndex.tailMap(titleKey).entrySet()) {
+            if (!entry.getKey().startsWith(titleKey)) {
+                break;
+            }
+            if (entry.getValue().getValue().equals(title)) {
+                return Optional.of(entry.getValue());
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return true when suggestions are served from the local prefix index
+     */
+    public boolean isLocal() {
+        return nearCacheEnabled && ready && builtGeneration == keyspace.generation();
+    }
+
+    /**
+     * Rebuilds the prefix index from the live index generation and swaps it in.
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener({ApplicationReadyEvent.class, MovieIndexSwappedEvent.class})
+    public synchronized void refresh() {
+        if (!nearCacheEnabled) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        synchronized (eventLock) {
+            eventsDuringRebuild = new ArrayList<>();
+        }
+        try {
+            long generation = keyspace.generation();
+            ConcurrentNavigableMap<String, Suggestion> newPrefixIndex = new ConcurrentSkipListMap<>();
+            Map<String, String> newIndexKeyById = new ConcurrentHashMap<>();
+            movieBulkOperations.forEachDocument(
+                    List.of(FieldName.of("$.title").as("title"), FieldName.of("$.extract").as("extract")),
+                    document -> put(
+                            newPrefixIndex,
+                            newIndexKeyById,
+                            (String) document.get("id"),
+                            Objects.toString(document.get("title"), null),
+                            Objects.toString(document.get("extract"), null)
+                    )
+            );
+            synchronized (eventLock) {
+                // The scan may have read a document before or after a change, replaying is idempotent
+                for (MoviesChangedEvent event : eventsDuringRebuild) {
+                    apply(event, newPrefixIndex, newIndexKeyById);
+                }
+                prefixIndex = newPrefixIndex;
+                indexKeyById = newIndexKeyById;
+                warmPrefixes = Map.of();
+                builtGeneration = generation;
+                ready = true;
+            }
+            logger.info("Built autocomplete near-cache with {} titles in {} ms",
+                    newPrefixIndex.size(), System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            ready = false;
+            logger.error("Could not build autocomplete near-cache, falling back to Redis", e);
+        } finally {
+            synchronized (eventLock) {
+                eventsDuringRebuild = null;
+            }
+        }
+    }
+
+    @EventListener
+    public void onMoviesChanged(MoviesChangedEvent event) {
+        if (!nearCacheEnabled) {
+            return;
+        }
+        synchronized (eventLock) {
+            if (eventsDuringRebuild != null) {
+                eventsDuringRebuild.add(event);
+            }
+            try {
+                apply(event, prefixIndex, indexKeyById);
+            } catch (RuntimeException e) {
+                // The index no longer matches Redis, serve from Redis until the next rebuild
+                ready = false;
+                logger.error("Could not apply a catalog change to the autocomplete near-cache, falling back to Redis", e);
+            }
+            warmPrefixes = Map.of();
+        }
+    }
+
+    private static void apply(
+            MoviesChangedEvent event,
+            ConcurrentNavigableMap<String, Suggestion> prefixIndex,
+            Map<String, String> indexKeyById
+    ) {
+        for (Movie movie : event.saved()) {
+            put(prefixIndex, indexKeyById, movie.getId(), movie.getTitle(), movie.getExtract());
+        }
+        for (Movie movie : event.deleted()) {
+            remove(prefixIndex, indexKeyById, movie.getId());
+        }
+    }
+
+    private static Map<String, Object> payloadOf(Suggestion suggestion) {
+        return suggestion.getPayload() == null ? Map.of() : suggestion.getPayload();
+    }
+
+    private Map<String, Object> parsePayload(byte[] payload) {
+        if (payload == null) {
+            return Map.of();
+        }
+        try {
+            return objectMapper.readValue(payload, new TypeReference<>() {});
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable suggestion payload {}", SafeEncoder.encode(payload));
+            return Map.of();
+        }
+    }
+
+    private static void put(
+            ConcurrentNavigableMap<String, Suggestion> prefixIndex,
+            Map<String, String> indexKeyById,
+            String id,
+            String title,
+            String extract
+    ) {
+        if (id == null || title == null) {
+            return;
+        }
+        String indexKey = title.toLowerCase(Locale.ROOT) + ID_SEPARATOR + id;
+        Map<String, Object> payload = extract == null ? Map.of() : Map.of("extract", extract);
+        prefixIndex.put(indexKey, new Suggestion(title, payload));
+
+        String previousKey = indexKeyById.put(id, indexKey);
+        if (previousKey != null && !previousKey.equals(indexKey)) {
+            prefixIndex.remove(previousKey);
+        }
+    }
+
+    private static void remove(
+            ConcurrentNavigableMap<String, Suggestion> prefixIndex,
+            Map<String, String> indexKeyById,
+            String id
+    ) {
+        if (id == null) {
+            return;
+        }
+        String indexKey = indexKeyById.remove(id);
+        if (indexKey != null) {
+            prefixIndex.remove(indexKey);
+        }
+    }
+}
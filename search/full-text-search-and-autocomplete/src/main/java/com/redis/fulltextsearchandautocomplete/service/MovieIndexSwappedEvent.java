@@ -0,0 +1,8 @@
+package com.redis.fulltextsearchandautocomplete.service;
+
+/**
+ * Published once the movie alias points at a freshly built index generation, so that
+ * in-memory views of the catalog can rebuild from it.
+ */
+public record MovieIndexSwappedEvent(long previousGeneration, long generation) {
+}
@@ -1,17 +1,38 @@
 package com.redis.fulltextsearchandautocomplete.service;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.redis.fulltextsearchandautocomplete.domain.Movie;
+import com.redis.fulltextsearchandautocomplete.repository.MovieBulkOperations;
+import com.redis.fulltextsearchandautocomplete.repository.MovieKeyspace;
 import com.redis.fulltextsearchandautocomplete.repository.MovieRepository;
+import redis.clients.jedis.search.FieldName;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Service;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
 
 @Service
 public class MovieService {
@@ -21,25 +42,235 @@ public class MovieService {
     private final ObjectMapper objectMapper;
     private final ResourceLoader resourceLoader;
     private final MovieRepository movieRepository;
+    private final MovieBulkOperations movieBulkOperations;
+    private final MovieKeyspace keyspace;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int batchSize;
+    private final int workers;
+    private final int progressInterval;
 
-    public MovieService(ObjectMapper objectMapper, ResourceLoader resourceLoader, MovieRepository movieRepository) {
+    public MovieService(
+            ObjectMapper objectMapper,
+            ResourceLoader resourceLoader,
+            MovieRepository movieRepository,
+            MovieBulkOperations movieBulkOperations,
+            MovieKeyspace keyspace,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${movies.load.batch-size:500}") int batchSize,
+            @Value("${movies.load.workers:4}") int workers,
+            @Value("${movies.load.progress-interval:5000}") int progressInterval
+    ) {
         this.objectMapper = objectMapper;
         this.resourceLoader = resourceLoader;
         this.movieRepository = movieRepository;
+        this.movieBulkOperations = movieBulkOperations;
+        this.keyspace = keyspace;
+        this.eventPublisher = eventPublisher;
+        this.batchSize = batchSize;
+        this.workers = workers;
+        this.progressInterval = progressInterval;
     }
 
     public void loadAndSaveMovies(String filePath) throws Exception {
         Resource resource = resourceLoader.getResource("classpath:" + filePath);
         try (InputStream is = resource.getInputStream()) {
             List<Movie> movies = objectMapper.readValue(is, new TypeReference<>() {});
+            // The same ids as the streaming and incremental loaders, instead of generated ULIDs
+            movies.forEach(movie -> movie.setId(MovieBulkOperations.idFor(movie)));
             long systemMillis = System.currentTimeMillis();
-            movieRepository.saveAll(movies.reversed());
+            Lock lock = keyspace.liveWriteLock();
+            lock.lock();
+            try {
+                // The repository only knows the generation 0 prefix, later generations are written directly
+                if (keyspace.generation() == 0) {
+                    movieRepository.saveAll(movies.reversed());
+                } else {
+                    movieBulkOperations.saveAll(movies.reversed());
+                }
+            } finally {
+                lock.unlock();
+            }
+            eventPublisher.publishEvent(MoviesChangedEvent.saved(movies));
             long elapsedMillis = System.currentTimeMillis() - systemMillis;
             log.info("Saved " + movies.size() + " movies in " + elapsedMillis + " ms");
         }
     }
 
+    /**
+     * Streams the file with Jackson's token parser and writes fixed-size batches through a
+     * pipeline on several workers. At most two batches per worker are in memory at any time,
+     * so heap usage does not grow with the size of the file.
+     */
+    public long streamAndSaveMovies(String filePath) throws Exception {
+        return streamMovies(filePath, batch -> {
+            movieBulkOperations.saveAll(batch);
+            eventPublisher.publishEvent(MoviesChangedEvent.saved(batch));
+        });
+    }
+
+    long streamMovies(String filePath, Consumer<List<Movie>> batchWriter) throws Exception {
+        Resource resource = resourceLoader.getResource("classpath:" + filePath);
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        Semaphore inFlight = new Semaphore(workers * 2);
+        AtomicLong saved = new AtomicLong();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        long startTime = System.currentTimeMillis();
+
+        try (InputStream is = resource.getInputStream();
+             JsonParser parser = objectMapper.getFactory().createParser(is)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalStateException("Expected " + filePath + " to contain a JSON array of movies");
+            }
+
+            List<Movie> batch = new ArrayList<>(batchSize);
+            while (parser.nextToken() == JsonToken.START_OBJECT && failure.get() == null) {
+                batch.add(objectMapper.readValue(parser, Movie.class));
+                if (batch.size() == batchSize) {
+                    submitBatch(executor, inFlight, batchWriter, batch, saved, failure, startTime);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                submitBatch(executor, inFlight, batchWriter, batch, saved, failure, startTime);
+            }
+        } finally {
+            executor.shutdown();
+            if (!executor.awaitTermination(10, TimeUnit.MINUTES)) {
+                // Reporting the count so far as success would let a reindex swap to a partial generation
+                executor.shutdownNow();
+                failure.compareAndSet(null, new IllegalStateException(
+                        "Batches of " + filePath + " were still being written after 10 minutes"));
+            }
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        long elapsedMillis = System.currentTimeMillis() - startTime;
+        log.info("Streamed {} movies in {} ms ({} docs/sec)", saved.get(), elapsedMillis, docsPerSecond(saved.get(), elapsedMillis));
+        return saved.get();
+    }
+
+    /**
+     * Brings Redis in line with the file while writing only what changed. Each batch's
+     * content hashes are compared with the recorded ones in a single HMGET, and only new
+     * or modified movies are written. Movies still indexed but absent from the file are
+     * then deleted together with their title suggestions.
+     * <p>
+     * A movie already stored with the same title and year keeps its id, so documents
+     * written under other ids, such as the ULIDs of earlier repository loads, are updated
+     * in place instead of being replaced.
+     */
+    public void syncMovies(String filePath) throws Exception {
+        Resource resource = resourceLoader.getResource("classpath:" + filePath);
+        Map<String, String> storedIds = new HashMap<>();
+        movieBulkOperations.forEachDocument(
+                List.of(FieldName.of("$.title").as("title"), FieldName.of("$.year").as("year")),
+                document -> storedIds.putIfAbsent(
+                        MovieBulkOperations.naturalKey(Objects.toString(document.get("title"), null), Objects.toString(document.get("year"), "0")),
+                        (String) document.get("id")
+                )
+        );
+        Set<String> seenIds = new HashSet<>();
+        Set<String> seenTitles = new HashSet<>();
+        long written = 0;
+        long startTime = System.currentTimeMillis();
+
+        try (InputStream is = resource.getInputStream();
+             JsonParser parser = objectMapper.getFactory().createParser(is)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalStateException("Expected " + filePath + " to contain a JSON array of movies");
+            }
+
+            List<Movie> batch = new ArrayList<>(batchSize);
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                Movie movie = objectMapper.readValue(parser, Movie.class);
+                if (movie.getId() == null) {
+                    String naturalKey = MovieBulkOperations.naturalKey(movie.getTitle(), Integer.toString(movie.getYear()));
+                    movie.setId(storedIds.getOrDefault(naturalKey, MovieBulkOperations.idFor(movie)));
+                }
+                seenIds.add(movie.getId());
+                seenTitles.add(movie.getTitle());
+                batch.add(movie);
+                if (batch.size() == batchSize) {
+                    written += writeChanged(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                written += writeChanged(batch);
+            }
+        }
+
+        List<Movie> removed = new ArrayList<>();
+        movieBulkOperations.forEachDocument(List.of(FieldName.of("$.title").as("title")), document -> {
+            String id = (String) document.get("id");
+            if (!seenIds.contains(id)) {
+                Movie movie = new Movie();
+                movie.setId(id);
+                movie.setTitle(Objects.toString(document.get("title"), null));
+                removed.add(movie);
+            }
+        });
+        for (int i = 0; i < removed.size(); i += batchSize) {
+            List<Movie> batch = removed.subList(i, Math.min(i + batchSize, removed.size()));
+            movieBulkOperations.deleteAll(batch, seenTitles);
+            eventPublisher.publishEvent(MoviesChangedEvent.deleted(List.copyOf(batch)));
+        }
+
+        long elapsedMillis = System.currentTimeMillis() - startTime;
+        log.info("Synced {} movies in {} ms: {} written, {} deleted, {} unchanged",
+                seenIds.size(), elapsedMillis, written, removed.size(), seenIds.size() - written);
+    }
+
+    private int writeChanged(List<Movie> batch) {
+        List<String> storedHashes = movieBulkOperations.storedContentHashes(batch.stream().map(Movie::getId).toList());
+        List<Movie> changed = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Movie movie = batch.get(i);
+            if (!movieBulkOperations.contentHash(movie).equals(storedHashes.get(i))) {
+                changed.add(movie);
+            }
+        }
+        if (!changed.isEmpty()) {
+            movieBulkOperations.saveAll(changed);
+            eventPublisher.publishEvent(MoviesChangedEvent.saved(changed));
+        }
+        return changed.size();
+    }
+
+    private void submitBatch(
+            ExecutorService executor,
+            Semaphore inFlight,
+            Consumer<List<Movie>> batchWriter,
+            List<Movie> batch,
+            AtomicLong saved,
+            AtomicReference<Exception> failure,
+            long startTime
+    ) throws InterruptedException {
+        inFlight.acquire();
+        executor.execute(() -> {
+            try {
+                batchWriter.accept(batch);
+                long total = saved.addAndGet(batch.size());
+                if (total / progressInterval != (total - batch.size()) / progressInterval) {
+                    long elapsedMillis = System.currentTimeMillis() - startTime;
+                    log.info("Loaded {} movies so far ({} docs/sec)", total, docsPerSecond(total, elapsedMillis));
+                }
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private static long docsPerSecond(long docs, long elapsedMillis) {
+        return elapsedMillis == 0 ? docs : docs * 1000 / elapsedMillis;
+    }
+
     public boolean isDataLoaded() {
-        return movieRepository.count() > 0;
+        return movieBulkOperations.count() > 0;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,20 @@
+package com.redis.fulltextsearchandautocomplete.service;
+
+import com.redis.fulltextsearchandautocomplete.domain.Movie;
+
+import java.util.List;
+
+/**
+ * Published after a batch of movies has been written to or removed from Redis, so that
+ * in-memory views of the catalog can follow along without polling.
+ */
+public record MoviesChangedEvent(List<Movie> saved, List<Movie> deleted) {
+
+    public static MoviesChangedEvent saved(List<Movie> movies) {
+        return new MoviesChangedEvent(movies, List.of());
+    }
+
+    public static MoviesChangedEvent deleted(List<Movie> movies) {
+        return new MoviesChangedEvent(List.of(), movies);
+    }
+}
@@ -0,0 +1,261 @@
+package com.redis.fulltextsearchandautocomplete.service;
+
+import com.redis.fulltextsearchandautocomplete.repository.MovieBulkOperations;
+import com.redis.fulltextsearchandautocomplete.repository.MovieKeyspace;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.search.FTCreateParams;
+import redis.clients.jedis.search.IndexDataType;
+import redis.clients.jedis.search.schemafields.NumericField;
+import redis.clients.jedis.search.schemafields.SchemaField;
+import redis.clients.jedis.search.schemafields.TagField;
+import redis.clients.jedis.search.schemafields.TextField;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Blue/green reindexing of the movie catalog.
+ * <p>
+ * The new generation gets its own index, key prefix and suggestion dictionary, and is loaded
+ * with the streaming loader while the live one keeps serving queries. Once it is fully indexed,
+ * the suggestion dictionary is renamed into place and the alias is switched with FT.ALIASUPDATE,
+ * while writers to the live generation are held off. The previous generation's keys are
+ * unlinked afterwards in the background. A reindex that fails, or is not fully indexed within
+ * {@code reindex.indexing-timeout-ms}, drops everything it built and leaves the live
+ * generation serving.
+ */
+@Service
+public class ReindexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReindexService.class);
+    private static final long CLEANUP_PAUSE_MILLIS = 10;
+
+    private final JedisPooled jedis;
+    private final MovieKeyspace keyspace;
+    private final MovieService movieService;
+    private final MovieBulkOperations movieBulkOperations;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final long indexingTimeoutMillis;
+
+    public ReindexService(
+            JedisPooled jedis,
+            MovieKeyspace keyspace,
+            MovieService movieService,
+            MovieBulkOperations movieBulkOperations,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${reindex.indexing-timeout-ms:600000}") long indexingTimeoutMillis
+    ) {
+        this.jedis = jedis;
+        this.keyspace = keyspace;
+        this.movieService = movieService;
+        this.movieBulkOperations = movieBulkOperations;
+        this.eventPublisher = eventPublisher;
+        this.indexingTimeoutMillis = indexingTimeoutMillis;
+    }
+
+    /**
+     * Starts a reindex in the background.
+     * @return false if one is already running
+     */
+    public boolean startReindex(String filePath) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        executor.execute(() -> {
+            try {
+                reindex(filePath);
+            } catch (Exception e) {
+                logger.error("Reindex failed and was rolled back, the live index is unchanged", e);
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void reindex(String filePath) throws Exception {
+        long previous = keyspace.generation();
+        long next = jedis.incr(keyspace.generationCounterKey());
+        String indexName = keyspace.indexNameFor(next);
+        String keyPrefix = keyspace.keyPrefixFor(next);
+        String stagingSuggestionKey = keyspace.titleSuggestionKey() + ":v" + next;
+        long startTime = System.currentTimeMillis();
+        long loaded;
+        boolean aliasSwitched = false;
+
+        try {
+            logger.info("Building movie index generation {} ({} on {})", next, indexName, keyPrefix);
+            jedis.ftCreate(indexName, FTCreateParams.createParams().on(IndexDataType.JSON).prefix(keyPrefix), schema());
+
+            loaded = movieService.streamMovies(filePath,
+                    batch -> movieBulkOperations.saveAll(batch, keyPrefix, stagingSuggestionKey));
+            awaitIndexed(indexName);
+
+            // Writers wait here, so none lands in the old generation or suggestions once these are swapped
+            Lock swapLock = keyspace.swapLock();
+            swapLock.lock();
+            try {
+                jedis.ftAliasUpdate(keyspace.aliasName(), indexName);
+                aliasSwitched = true;
+                jedis.rename(stagingSuggestionKey, keyspace.titleSuggestionKey());
+                keyspace.promote(next);
+            } finally {
+                swapLock.unlock();
+            }
+        } catch (Exception e) {
+            discard(next, previous, aliasSwitched, stagingSuggestionKey, e);
+            throw e;
+        }
+        logger.info("Swapped movie alias to generation {} with {} movies after {} ms",
+                next, loaded, System.currentTimeMillis() - startTime);
+        eventPublisher.publishEvent(new MovieIndexSwappedEvent(previous, next));
+
+        retire(previous);
+    }
+
+    /**
+     * Removes what a failed reindex built, pointing the alias back first if it was already
+     * switched. Each step runs even when an earlier one fails, and cleanup failures are
+     * attached to the original failure instead of replacing it.
+     */
+    private void discard(long generation, long previous, boolean aliasSwitched, String stagingSuggestionKey, Exception failure) {
+        if (aliasSwitched && !cleanup(failure, () -> jedis.ftAliasUpdate(keyspace.aliasName(), keyspace.indexNameFor(previous)))) {
+            // The alias may still point at the new index, so keep it for whoever repairs the alias
+            return;
+        }
+        cleanup(failure, () -> jedis.ftDropIndex(keyspace.indexNameFor(generation)));
+        cleanup(failure, () -> movieBulkOperations.unlinkByPrefix(keyspace.keyPrefixFor(generation), CLEANUP_PAUSE_MILLIS));
+        cleanup(failure, () -> jedis.del(stagingSuggestionKey));
+        logger.info("Discarded movie index generation {}", generation);
+    }
+
+    private static boolean cleanup(Exception failure, Callable<?> step) {
+        try {
+            step.call();
+            return true;
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            failure.addSuppressed(e);
+            return false;
+        }
+    }
+
+    /**
+     * Mirrors the schema Redis OM Spring derives from the annotations on Movie. Checked against
+     * the generation 0 index at startup by {@link #verifySchema()}.
+     */
+    private static List<SchemaField> schema() {
+        return List.of(
+                TagField.of("$.id").as("id"),
+                TextField.of("$.title").as("title"),
+                NumericField.of("$.year").as("year").sortable(),
+                TagField.of("$.cast[*]").as("cast"),
+                TagField.of("$.genres[*]").as("genres"),
+                TextField.of("$.extract").as("extract")
+        );
+    }
+
+    /**
+     * Fails startup when {@link #schema()} no longer matches the index Redis OM Spring created
+     * from the annotations, since every reindex would otherwise silently build a different one.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void verifySchema() {
+        Set<String> expected = new HashSet<>();
+        for (SchemaField field : schema()) {
+            expected.add(describe(field.getName(), field.getFieldName().getAttribute(), typeOf(field)));
+        }
+        Set<String> actual = new HashSet<>();
+        if (jedis.ftInfo(keyspace.indexNameFor(0)).get("attributes") instanceof List<?> attributes) {
+            for (Object attribute : attributes) {
+                Map<String, String> properties = properties(attribute);
+                actual.add(describe(properties.get("identifier"), properties.get("attribute"), properties.get("type")));
+            }
+        }
+        if (!expected.equals(actual)) {
+            throw new IllegalStateException("The reindex schema " + expected
+                    + " does not match the Movie index built from the annotations " + actual);
+        }
+    }
+
+    private static String describe(String path, String attribute, String type) {
+        return path + " AS " + attribute + " " + type;
+    }
+
+    private static String typeOf(SchemaField field) {
+        if (field instanceof TextField) {
+            return "TEXT";
+        }
+        if (field instanceof TagField) {
+            return "TAG";
+        }
+        if (field instanceof NumericField) {
+            return "NUMERIC";
+        }
+        throw new IllegalArgumentException("Unexpected schema field " + field);
+    }
+
+    /**
+     * FT.INFO describes each attribute as a flat list of names and values.
+     */
+    private static Map<String, String> properties(Object attribute) {
+        Map<String, String> properties = new HashMap<>();
+        if (attribute instanceof List<?> values) {
+            for (int i = 0; i + 1 < values.size(); i += 2) {
+                properties.put(String.valueOf(values.get(i)).toLowerCase(Locale.ROOT), String.valueOf(values.get(i + 1)));
+            }
+        }
+        return properties;
+    }
+
+    private void awaitIndexed(String indexName) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + indexingTimeoutMillis;
+        while (!"0".equals(String.valueOf(jedis.ftInfo(indexName).get("indexing")))) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException(indexName + " was still indexing after " + indexingTimeoutMillis + " ms");
+            }
+            Thread.sleep(100);
+        }
+    }
+
+    private void retire(long generation) throws InterruptedException {
+        String indexName = keyspace.indexNameFor(generation);
+        String keyPrefix = keyspace.keyPrefixFor(generation);
+        if (generation > 0) {
+            // Generation 0 is the index Redis OM Spring manages and recreates on startup, keep it
+            jedis.ftDropIndex(indexName);
+        }
+        long unlinked = movieBulkOperations.unlinkByPrefix(keyPrefix, CLEANUP_PAUSE_MILLIS);
+        logger.info("Retired movie index generation {}: unlinked {} keys", generation, unlinked);
+    }
+}
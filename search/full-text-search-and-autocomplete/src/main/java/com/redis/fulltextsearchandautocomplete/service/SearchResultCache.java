@@ -0,0 +1,159 @@
+package com.redis.fulltextsearchandautocomplete.service;
+
+import com.redis.fulltextsearchandautocomplete.domain.MovieSummary;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of search responses, keyed by the normalized filter set.
+ * <p>
+ * Entries are stamped with the index version current when they were computed. Any write to
+ * the catalog bumps the version, which turns every older entry into a miss without having
+ * to find or evict it.
+ */
+@Component
+public class SearchResultCache {
+
+    public record Key(
+            String kind,
+            String title,
+            String extract,
+            List<String> cast,
+            Integer year,
+            List<String> genres,
+            int offset,
+            int size,
+            boolean highlight
+    ) {
+        public static Key of(
+                String kind,
+                String title,
+                String extract,
+                List<String> cast,
+                Integer year,
+                List<String> genres,
+                int offset,
+                int size,
+                boolean highlight
+        ) {
+            return new Key(kind, normalize(title), normalize(extract), normalize(cast), year, normalize(genres),
+                    offset, size, highlight);
+        }
+
+        private static String normalize(String value) {
+            return value == null || value.isBlank() ? null : value.trim().toLowerCase(Locale.ROOT);
+        }
+
+        private static List<String> normalize(List<String> values) {
+            if (values == null || values.isEmpty()) {
+                return null;
+            }
+            return values.stream().map(Key::normalize).filter(Objects::nonNull).sorted().toList();
+        }
+    }
+
+    private record Entry(long version, Map<String, Object> result, long estimatedBytes) {
+    }
+
+    private final int maxEntries;
+    private final AtomicLong indexVersion = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private long estimatedBytes;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            if (size() > maxEntries) {
+                estimatedBytes -= eldest.getValue().estimatedBytes();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    public SearchResultCache(@Value("${search.cache.max-entries:1000}") int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    public long indexVersion() {
+        return indexVersion.get();
+    }
+
+    /**
+     * @return the cached response for the key if it was computed at the given index version
+     */
+    public synchronized Optional<Map<String, Object>> get(Key key, long version) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.version() != version) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(entry.result());
+    }
+
+    public synchronized void put(Key key, long version, Map<String, Object> result) {
+        if (!isEnabled() || version != indexVersion.get()) {
+            return;
+        }
+        Entry entry = new Entry(version, Map.copyOf(result), estimateBytes(result));
+        Entry previous = entries.put(key, entry);
+        estimatedBytes += entry.estimatedBytes() - (previous == null ? 0 : previous.estimatedBytes());
+    }
+
+    @EventListener({MoviesChangedEvent.class, MovieIndexSwappedEvent.class})
+    public synchronized void invalidate() {
+        indexVersion.incrementAndGet();
+        entries.clear();
+        estimatedBytes = 0;
+    }
+
+    public synchronized Map<String, Object> stats() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("entries", entries.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("estimatedBytes", estimatedBytes);
+        stats.put("hits", hitCount);
+        stats.put("misses", lookups - hitCount);
+        stats.put("hitRate", lookups == 0 ? 0.0 : (double) hitCount / lookups);
+        stats.put("indexVersion", indexVersion.get());
+        return stats;
+    }
+
+    /**
+     * Rough heap estimate: two bytes per character of the returned text plus a fixed
+     * overhead per movie.
+     */
+    private static long estimateBytes(Map<String, Object> result) {
+        long bytes = 256;
+        if (result.get("movies") instanceof List<?> movies) {
+            for (Object movie : movies) {
+                if (movie instanceof MovieSummary summary) {
+                    bytes += 128;
+                    bytes += 2L * (length(summary.id()) + length(summary.title()) + length(summary.thumbnail())
+                            + length(summary.extract()));
+                    bytes += 2L * summary.cast().stream().mapToLong(SearchResultCache::length).sum();
+                    bytes += 2L * summary.genres().stream().mapToLong(SearchResultCache::length).sum();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static long length(String value) {
+        return value == null ? 0 : value.length();
+    }
+}
@@ -1,35 +1,99 @@
 package com.redis.fulltextsearchandautocomplete.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.redis.fulltextsearchandautocomplete.domain.Movie;
 import com.redis.fulltextsearchandautocomplete.domain.Movie$;
-import com.redis.fulltextsearchandautocomplete.repository.MovieRepository;
+import com.redis.fulltextsearchandautocomplete.domain.MovieSummary;
+import com.redis.fulltextsearchandautocomplete.repository.MovieKeyspace;
 import com.redis.om.spring.search.stream.EntityStream;
 import com.redis.om.spring.search.stream.SearchStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.search.Document;
+import redis.clients.jedis.search.FTSpellCheckParams;
+import redis.clients.jedis.search.FieldName;
+import redis.clients.jedis.search.Query;
+import redis.clients.jedis.search.SearchResult;
+import redis.clients.jedis.search.aggr.AggregationBuilder;
+import redis.clients.jedis.search.aggr.AggregationResult;
+import redis.clients.jedis.search.aggr.Reducers;
+import redis.clients.jedis.search.aggr.SortedField;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class SearchService {
 
     private static final Logger logger = LoggerFactory.getLogger(SearchService.class);
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int MAX_GENRE_FACETS = 100;
+    private static final int MAX_DECADE_FACETS = 20;
+    private static final int TOP_CAST_FACETS = 10;
+    private static final int SNIPPET_FRAGMENTS = 3;
+    private static final int SNIPPET_FRAGMENT_WORDS = 20;
+    private static final int SPELLCHECK_DISTANCE = 2;
+    private static final int MAX_CAST_EDIT_DISTANCE = 2;
+    private static final int MIN_FUZZY_TERM_LENGTH = 4;
+    private static final int MIN_DOUBLE_FUZZY_TERM_LENGTH = 8;
+    private static final Query.HighlightTags HIGHLIGHT_TAGS = new Query.HighlightTags("<mark>", "</mark>");
+    private static final FieldName[] SUMMARY_FIELDS = {
+            FieldName.of("$.title").as("title"),
+            FieldName.of("$.year").as("year"),
+            FieldName.of("$.cast").as("cast"),
+            FieldName.of("$.genres").as("genres"),
+            FieldName.of("$.thumbnail").as("thumbnail"),
+            FieldName.of("$.extract").as("extract")
+    };
+
     private final EntityStream entityStream;
-    private final MovieRepository movieRepository;
+    private final JedisPooled jedis;
+    private final MovieKeyspace keyspace;
+    private final ObjectMapper objectMapper;
+    private final TagVocabularyService tagVocabularyService;
+    private final SearchResultCache searchResultCache;
 
-    public SearchService(EntityStream entityStream, MovieRepository movieRepository) {
+    public SearchService(
+            EntityStream entityStream,
+            JedisPooled jedis,
+            MovieKeyspace keyspace,
+            ObjectMapper objectMapper,
+            TagVocabularyService tagVocabularyService,
+            SearchResultCache searchResultCache
+    ) {
         this.entityStream = entityStream;
-        this.movieRepository = movieRepository;
+        this.jedis = jedis;
+        this.keyspace = keyspace;
+        this.objectMapper = objectMapper;
+        this.tagVocabularyService = tagVocabularyService;
+        this.searchResultCache = searchResultCache;
     }
 
+    /**
+     * Returns one page of matches, projected to the fields the result list renders.
+     * Paging uses LIMIT offsets carried in an opaque page token, so the cost of a request
+     * depends on the page size rather than on how many documents match.
+     * With {@code highlight}, matched terms in title and extract are wrapped in {@code <mark>}
+     * and the extract is cut down to the fragments around them by Redis.
+     * A query matching nothing is retried on the server with misspellings tolerated, see
+     * {@link #fallbackResult}.
+     */
     public Map<String, Object> searchByExtractAndCast(
             String title,
             String extract,
             List<String> actors,
             Integer year,
-            List<String> genres
+            List<String> genres,
+            int pageSize,
+            String pageToken,
+            boolean highlight
     ) {
         logger.info("Received title: {}", title);
         logger.info("Received extract: {}", extract);
@@ -37,38 +101,127 @@ public class SearchService {
         logger.info("Received year: {}", year);
         logger.info("Received genres: {}", genres);
 
+        int size = Math.clamp(pageSize, 1, MAX_PAGE_SIZE);
+        int offset = decodePageToken(pageToken);
+
         long startTime = System.currentTimeMillis();
 
-        SearchStream<Movie> stream = entityStream.of(Movie.class);
-        List<Movie> matchedMovies = stream
-                .filter(Movie$.TITLE.containing(title))
-                .filter(Movie$.EXTRACT.containing(extract))
-                .filter(Movie$.CAST.eq(actors))
-                .filter(Movie$.YEAR.eq(year))
-                .filter(Movie$.GENRES.eq(genres))
-                .sorted(Movie$.YEAR)
-                .collect(Collectors.toList());
+        SearchResultCache.Key cacheKey = SearchResultCache.Key.of("search", title, extract, actors, year, genres, offset, size, highlight);
+        long indexVersion = searchResultCache.indexVersion();
+        Optional<Map<String, Object>> cached = cachedResult(cacheKey, indexVersion, startTime);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        Query query = pageQuery(backingQuery(title, extract, actors, year, genres), offset, size, highlight);
+        SearchResult searchResult = jedis.ftSearch(keyspace.indexName(), query);
+
+        Map<String, Object> result = null;
+        if (searchResult.getTotalResults() == 0) {
+            result = fallbackResult(title, extract, actors, year, genres, offset, size, highlight, startTime)
+                    .orElse(null);
+        }
 
         long endTime = System.currentTimeMillis();
         long searchTime = endTime - startTime;
 
         logger.info("Search completed in {} ms", searchTime);
 
-        Map<String, Object> result = new HashMap<>();
-        result.put("movies", matchedMovies);
-        result.put("count", matchedMovies.size());
-        result.put("searchTime", searchTime);
+        if (result == null) {
+            result = pageResult(searchResult, offset, size, searchTime);
+        }
+        searchResultCache.put(cacheKey, indexVersion, result);
+        return result;
+    }
+
+    /**
+     * Same page as {@link #searchByExtractAndCast}, plus document counts per genre, per decade
+     * and for the most frequent cast members among all matches. The page and the three
+     * FT.AGGREGATE GROUPBY queries share one pipeline, so the whole response costs a single
+     * round trip.
+     */
+    public Map<String, Object> facetedSearch(
+            String title,
+            String extract,
+            List<String> actors,
+            Integer year,
+            List<String> genres,
+            int pageSize,
+            String pageToken,
+            boolean highlight
+    ) {
+        int size = Math.clamp(pageSize, 1, MAX_PAGE_SIZE);
+        int offset = decodePageToken(pageToken);
+        String indexName = keyspace.indexName();
+        String queryString = backingQuery(title, extract, actors, year, genres);
+
+        long startTime = System.currentTimeMillis();
 
+        SearchResultCache.Key cacheKey = SearchResultCache.Key.of("facets", title, extract, actors, year, genres, offset, size, highlight);
+        long indexVersion = searchResultCache.indexVersion();
+        Optional<Map<String, Object>> cached = cachedResult(cacheKey, indexVersion, startTime);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        Response<SearchResult> page;
+        Response<AggregationResult> genreFacet;
+        Response<AggregationResult> decadeFacet;
+        Response<AggregationResult> castFacet;
+        try (Pipeline pipeline = jedis.pipelined()) {
+            page = pipeline.ftSearch(indexName, pageQuery(queryString, offset, size, highlight));
+            genreFacet = pipeline.ftAggregate(indexName, tagFacet(queryString, "$.genres", "genre", MAX_GENRE_FACETS));
+            decadeFacet = pipeline.ftAggregate(indexName, new AggregationBuilder(queryString)
+                    .apply("floor(@year / 10) * 10", "decade")
+                    .groupBy("@decade", Reducers.count().as("count"))
+                    .sortBy(MAX_DECADE_FACETS, SortedField.asc("@decade")));
+            castFacet = pipeline.ftAggregate(indexName, tagFacet(queryString, "$.cast", "actor", TOP_CAST_FACETS));
+            pipeline.sync();
+        }
+
+        long endTime = System.currentTimeMillis();
+        long searchTime = endTime - startTime;
+
+        logger.info("Faceted search completed in {} ms", searchTime);
+
+        Map<String, Object> facets = new HashMap<>();
+        facets.put("genres", facetCounts(genreFacet.get(), "genre"));
+        facets.put("decades", facetCounts(decadeFacet.get(), "decade"));
+        facets.put("cast", facetCounts(castFacet.get(), "actor"));
+
+        Map<String, Object> result = pageResult(page.get(), offset, size, searchTime);
+        result.put("facets", facets);
+        searchResultCache.put(cacheKey, indexVersion, result);
         return result;
     }
 
+    /**
+     * Number of movies matching the filters. FT.SEARCH with LIMIT 0 0 returns only the total,
+     * no document is loaded or sent.
+     */
+    public long count(String title, String extract, List<String> actors, Integer year, List<String> genres) {
+        Query query = new Query(backingQuery(title, extract, actors, year, genres)).limit(0, 0);
+        return jedis.ftSearch(keyspace.indexName(), query).getTotalResults();
+    }
+
+    /**
+     * Whether any movie matches the filters. Asks for a single key with NOCONTENT, so no
+     * document is loaded.
+     */
+    public boolean exists(String title, String extract, List<String> actors, Integer year, List<String> genres) {
+        Query query = new Query(backingQuery(title, extract, actors, year, genres)).setNoContent().limit(0, 1);
+        return !jedis.ftSearch(keyspace.indexName(), query).getDocuments().isEmpty();
+    }
+
     public Set<String> getAllGenres() {
+        if (tagVocabularyService.isReady()) {
+            return tagVocabularyService.getGenreCounts().keySet();
+        }
+
         logger.info("Fetching all unique genres");
         long startTime = System.currentTimeMillis();
 
-        Iterable<String> genresIterable = movieRepository.getAllGenres();
-        Set<String> allGenres = new HashSet<>();
-        genresIterable.forEach(allGenres::add);
+        Set<String> allGenres = new HashSet<>(jedis.ftTagVals(keyspace.indexName(), "genres"));
 
         long endTime = System.currentTimeMillis();
         long fetchTime = endTime - startTime;
@@ -77,4 +230,252 @@ public class SearchService {
 
         return allGenres;
     }
+
+    /**
+     * Renders the metamodel filters into a RediSearch query string, so that paths going
+     * through Jedis directly match exactly the same documents as the entity stream would.
+     */
+    String backingQuery(String title, String extract, List<String> actors, Integer year, List<String> genres) {
+        SearchStream<Movie> stream = entityStream.of(Movie.class)
+                .filter(Movie$.TITLE.containing(title))
+                .filter(Movie$.EXTRACT.containing(extract))
+                .filter(Movie$.CAST.eq(actors))
+                .filter(Movie$.YEAR.eq(year))
+                .filter(Movie$.GENRES.eq(genres));
+        return stream.backingQuery();
+    }
+
+    /**
+     * Retries a query that matched nothing with every title and text term of four or more
+     * letters made fuzzy ({@code %term%}, or {@code %%term%%} from eight letters), and with
+     * unknown cast members replaced by the closest known name. FT.SPELLCHECK on the same terms
+     * shares the pipeline, so the retry and the "did you mean" hint cost one extra round trip.
+     * The original query matched nothing at any offset, so later pages page through the retry.
+     *
+     * @return the retry's page with a {@code didYouMean} map of corrected inputs, or empty
+     * when there was nothing to correct
+     */
+    private Optional<Map<String, Object>> fallbackResult(
+            String title,
+            String extract,
+            List<String> actors,
+            Integer year,
+            List<String> genres,
+            int offset,
+            int size,
+            boolean highlight,
+            long startTime
+    ) {
+        List<String> titleTerms = terms(title);
+        List<String> extractTerms = terms(extract);
+        List<String> correctedCast = correctCast(actors);
+        boolean castCorrected = !Objects.equals(correctedCast, actors);
+        if (titleTerms.isEmpty() && extractTerms.isEmpty() && !castCorrected) {
+            return Optional.empty();
+        }
+
+        String indexName = keyspace.indexName();
+        String fuzzyQuery = backingQuery(null, null, correctedCast, year, genres);
+        fuzzyQuery = withTextClause(fuzzyQuery, "title", titleTerms);
+        fuzzyQuery = withTextClause(fuzzyQuery, "extract", extractTerms);
+        List<String> allTerms = Stream.concat(titleTerms.stream(), extractTerms.stream()).distinct().toList();
+
+        Response<Map<String, Map<String, Double>>> spellCheck = null;
+        Response<SearchResult> page;
+        try (Pipeline pipeline = jedis.pipelined()) {
+            if (!allTerms.isEmpty()) {
+                spellCheck = pipeline.ftSpellCheck(indexName, String.join(" ", allTerms),
+                        FTSpellCheckParams.spellCheckParams().distance(SPELLCHECK_DISTANCE));
+            }
+            page = pipeline.ftSearch(indexName, pageQuery(fuzzyQuery, offset, size, highlight));
+            pipeline.sync();
+        }
+
+        Map<String, String> corrections = spellCheck == null ? Map.of() : bestCorrections(spellCheck.get());
+        Map<String, Object> didYouMean = new HashMap<>();
+        correctedText(titleTerms, corrections).ifPresent(corrected -> didYouMean.put("title", corrected));
+        correctedText(extractTerms, corrections).ifPresent(corrected -> didYouMean.put("text", corrected));
+        if (castCorrected) {
+            didYouMean.put("cast", correctedCast);
+        }
+
+        SearchResult searchResult = page.get();
+        if (searchResult.getTotalResults() == 0 && didYouMean.isEmpty()) {
+            return Optional.empty();
+        }
+        logger.info("No exact matches, fuzzy retry found {} movies, did you mean {}",
+                searchResult.getTotalResults(), didYouMean);
+
+        Map<String, Object> result = pageResult(searchResult, offset, size, System.currentTimeMillis() - startTime);
+        result.put("fuzzy", true);
+        result.put("didYouMean", didYouMean);
+        return Optional.of(result);
+    }
+
+    private List<String> correctCast(List<String> actors) {
+        if (actors == null || actors.isEmpty() || !tagVocabularyService.isReady()) {
+            return actors;
+        }
+        return actors.stream()
+                .map(actor -> tagVocabularyService.closestCastMember(actor, MAX_CAST_EDIT_DISTANCE).orElse(actor))
+                .toList();
+    }
+
+    private static List<String> terms(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+                .filter(term -> !term.isEmpty())
+                .toList();
+    }
+
+    private static String withTextClause(String queryString, String field, List<String> terms) {
+        if (terms.isEmpty()) {
+            return queryString;
+        }
+        StringJoiner clause = new StringJoiner(" ", "@" + field + ":(", ")");
+        for (String term : terms) {
+            if (term.length() >= MIN_DOUBLE_FUZZY_TERM_LENGTH) {
+                clause.add("%%" + term + "%%");
+            } else if (term.length() >= MIN_FUZZY_TERM_LENGTH) {
+                clause.add("%" + term + "%");
+            } else {
+                clause.add(term);
+            }
+        }
+        return "*".equals(queryString) ? clause.toString() : queryString + " " + clause;
+    }
+
+    /**
+     * @return misspelled term to its highest scored suggestion
+     */
+    private static Map<String, String> bestCorrections(Map<String, Map<String, Double>> spellCheck) {
+        Map<String, String> corrections = new HashMap<>();
+        spellCheck.forEach((term, suggestions) -> suggestions.entrySet().stream()
+                .max(Map.Entry.comparingByValue())
+                .ifPresent(best -> corrections.put(term, best.getKey())));
+        return corrections;
+    }
+
+    private static Optional<String> correctedText(List<String> terms, Map<String, String> corrections) {
+        if (terms.stream().noneMatch(corrections::containsKey)) {
+            return Optional.empty();
+        }
+        return Optional.of(String.join(" ", terms.stream().map(term -> corrections.getOrDefault(term, term)).toList()));
+    }
+
+    private Optional<Map<String, Object>> cachedResult(SearchResultCache.Key cacheKey, long indexVersion, long startTime) {
+        if (!searchResultCache.isEnabled()) {
+            return Optional.empty();
+        }
+        return searchResultCache.get(cacheKey, indexVersion).map(cached -> {
+            Map<String, Object> result = new HashMap<>(cached);
+            result.put("searchTime", System.currentTimeMillis() - startTime);
+            result.put("cached", true);
+            logger.info("Served search from cache");
+            return result;
+        });
+    }
+
+    private Query pageQuery(String queryString, int offset, int size, boolean highlight) {
+        Query query = new Query(queryString)
+                .setSortBy("year", true)
+                .limit(offset, size)
+                .returnFields(SUMMARY_FIELDS);
+        if (highlight) {
+            query.summarizeFields(SNIPPET_FRAGMENT_WORDS, SNIPPET_FRAGMENTS, " ... ", "extract")
+                    .highlightFields(HIGHLIGHT_TAGS, "title", "extract");
+        }
+        return query;
+    }
+
+    private Map<String, Object> pageResult(SearchResult searchResult, int offset, int size, long searchTime) {
+        List<MovieSummary> matchedMovies = new ArrayList<>(searchResult.getDocuments().size());
+        for (Document document : searchResult.getDocuments()) {
+            matchedMovies.add(toSummary(document));
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("movies", matchedMovies);
+        result.put("count", searchResult.getTotalResults());
+        result.put("searchTime", searchTime);
+        if (offset + size < searchResult.getTotalResults()) {
+            result.put("nextPageToken", encodePageToken(offset + size));
+        }
+        return result;
+    }
+
+    /**
+     * Counts per value of a JSON array indexed as a multi-value TAG, most frequent first.
+     * GROUPBY on the TAG attribute itself sees a single value per document, so the array is
+     * loaded as JSON text and split into its elements, and GROUPBY on that list counts every
+     * element.
+     */
+    private static AggregationBuilder tagFacet(String queryString, String path, String field, int limit) {
+        String list = field + "List";
+        return new AggregationBuilder(queryString)
+                .load(FieldName.of(path).as(list))
+                .apply("split(@" + list + ", \",\", '[]\" ')", field)
+                .groupBy("@" + field, Reducers.count().as("count"))
+                .filter("@" + field + " != \"\"")
+                .sortBy(limit, SortedField.desc("@count"));
+    }
+
+    private static Map<String, Long> facetCounts(AggregationResult aggregation, String field) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Map<String, Object> row : aggregation.getResults()) {
+            Object value = row.get(field);
+            Object count = row.get("count");
+            if (value != null && count != null) {
+                counts.put(value.toString(), Long.parseLong(count.toString()));
+            }
+        }
+        return counts;
+    }
+
+    MovieSummary toSummary(Document document) {
+        String id = MovieKeyspace.idFromKey(document.getId());
+        Object year = document.get("year");
+        return new MovieSummary(
+                id,
+                document.getString("title"),
+                year == null ? 0 : (int) Double.parseDouble(year.toString()),
+                readList(document.get("cast")),
+                readList(document.get("genres")),
+                document.getString("thumbnail"),
+                document.getString("extract")
+        );
+    }
+
+    private List<String> readList(Object value) {
+        if (value == null) {
+            return List.of();
+        }
+        try {
+            return objectMapper.readValue(value.toString(), new TypeReference<>() {});
+        } catch (JsonProcessingException e) {
+            return List.of(value.toString());
+        }
+    }
+
+    private static String encodePageToken(int offset) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(Integer.toString(offset).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int decodePageToken(String pageToken) {
+        if (pageToken == null || pageToken.isBlank()) {
+            return 0;
+        }
+        try {
+            int offset = Integer.parseInt(new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.UTF_8));
+            if (offset >= 0) {
+                return offset;
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid page token: " + pageToken, e);
+        }
+        throw new IllegalArgumentException("Invalid page token: " + pageToken);
+    }
 }
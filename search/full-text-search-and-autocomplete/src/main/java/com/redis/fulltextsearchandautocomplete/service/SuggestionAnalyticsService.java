@@ -0,0 +1,183 @@
+package com.redis.fulltextsearchandautocomplete.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redis.fulltextsearchandautocomplete.repository.MovieKeyspace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.resps.Tuple;
+import redis.clients.jedis.search.SearchProtocol;
+
+import java.util.*;
+
+/**
+ * Records which autocomplete suggestions users pick and which prefixes they type, and
+ * periodically feeds those counts back into suggestion ranking.
+ * <p>
+ * Picks accumulate in a pending sorted set. Each re-scoring run renames it away, so that
+ * picks arriving meanwhile start a fresh set. The drained counts are then added to the
+ * suggestion dictionary with batched FT.SUGADD ... INCR and to a cumulative popularity set.
+ * That set, together with the most used prefixes, is handed to the autocomplete
+ * near-cache for ranking and pre-warming. Only the {@code tracked-prefixes} most used
+ * prefixes are kept after each run.
+ */
+@Service
+public class SuggestionAnalyticsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SuggestionAnalyticsService.class);
+
+    private final JedisPooled jedis;
+    private final MovieKeyspace keyspace;
+    private final AutocompleteService autocompleteService;
+    private final ObjectMapper objectMapper;
+    private final int hotPrefixes;
+    private final int trackedPrefixes;
+
+    public SuggestionAnalyticsService(
+            JedisPooled jedis,
+            MovieKeyspace keyspace,
+            AutocompleteService autocompleteService,
+            ObjectMapper objectMapper,
+            @Value("${autocomplete.popularity.hot-prefixes:100}") int hotPrefixes,
+            @Value("${autocomplete.popularity.tracked-prefixes:10000}") int trackedPrefixes
+    ) {
+        this.jedis = jedis;
+        this.keyspace = keyspace;
+        this.autocompleteService = autocompleteService;
+        this.objectMapper = objectMapper;
+        this.hotPrefixes = hotPrefixes;
+        this.trackedPrefixes = trackedPrefixes;
+    }
+
+    /**
+     * @throws IllegalArgumentException when no movie has this exact title
+     */
+    public void recordSelection(String prefix, String title) {
+        if (autocompleteService.payloadsFor(List.of(title)).isEmpty()) {
+            throw new IllegalArgumentException("No movie is titled " + title);
+        }
+        try (Pipeline pipeline = jedis.pipelined()) {
+            pipeline.zincrby(keyspace.pendingSelectionsKey(), 1, title);
+            if (prefix != null && !prefix.isBlank()) {
+                pipeline.zincrby(keyspace.prefixUsageKey(), 1, prefix.trim().toLowerCase(Locale.ROOT));
+            }
+            pipeline.sync();
+        }
+    }
+
+    public void recordQuery(String query) {
+        if (query != null && !query.isBlank()) {
+            jedis.zincrby(keyspace.prefixUsageKey(), 1, query.trim().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    @Scheduled(
+            initialDelayString = "${autocomplete.popularity.rescore-interval-ms:60000}",
+            fixedDelayString = "${autocomplete.popularity.rescore-interval-ms:60000}"
+    )
+    public void rescore() {
+        String pendingKey = keyspace.pendingSelectionsKey();
+        String processingKey = pendingKey + ":processing";
+        try {
+            // A run that died half-way leaves its processing set behind, finish that one first
+            if (!jedis.exists(processingKey)) {
+                if (!jedis.exists(pendingKey)) {
+                    return;
+                }
+                jedis.rename(pendingKey, processingKey);
+            }
+
+            List<Tuple> picks = jedis.zrangeWithScores(processingKey, 0, -1);
+            addToSuggestions(picks, true);
+            jedis.del(processingKey);
+            logger.info("Re-scored {} picked suggestions", picks.size());
+
+            warmNearCache();
+        } catch (Exception e) {
+            logger.error("Could not re-score suggestions", e);
+        }
+    }
+
+    /**
+     * Puts the cumulative popularity back into the dictionary, for suggestions written by
+     * Redis OM Spring's own save path with the default score. Runs after the near-cache has
+     * been rebuilt, so the hot prefixes can be pre-warmed.
+     */
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @EventListener({ApplicationReadyEvent.class, MovieIndexSwappedEvent.class})
+    public void restorePopularity() {
+        try {
+            List<Tuple> popularity = jedis.zrangeWithScores(keyspace.titlePopularityKey(), 0, -1);
+            addToSuggestions(popularity, false);
+            warmNearCache();
+        } catch (Exception e) {
+            logger.error("Could not restore suggestion popularity", e);
+        }
+    }
+
+    /**
+     * Incremental runs add the pick counts on top of the current scores and to the cumulative
+     * popularity. Otherwise the scores are set to the default score plus the cumulative count,
+     * which is safe to repeat. Titles no longer in the catalog are skipped, and dropped from
+     * the cumulative popularity, so SUGADD never brings them back into the dictionary.
+     */
+    private void addToSuggestions(List<Tuple> picks, boolean incremental) {
+        String suggestionKey = keyspace.titleSuggestionKey();
+        Map<String, Map<String, Object>> payloads = autocompleteService.payloadsFor(
+                picks.stream().map(Tuple::getElement).toList());
+        try (Pipeline pipeline = jedis.pipelined()) {
+            for (Tuple pick : picks) {
+                String title = pick.getElement();
+                if (!payloads.containsKey(title)) {
+                    if (!incremental) {
+                        pipeline.zrem(keyspace.titlePopularityKey(), title);
+                    }
+                    continue;
+                }
+                List<String> args = new ArrayList<>(List.of(suggestionKey, title));
+                if (incremental) {
+                    args.add(Double.toString(pick.getScore()));
+                    args.add("INCR");
+                    pipeline.zincrby(keyspace.titlePopularityKey(), pick.getScore(), title);
+                } else {
+                    args.add(Double.toString(1.0 + pick.getScore()));
+                }
+                // Pass the payload along, the dictionary entry would otherwise lose it
+                if (!payloads.get(title).isEmpty()) {
+                    args.add("PAYLOAD");
+                    args.add(toJson(payloads.get(title)));
+                }
+                pipeline.sendCommand(SearchProtocol.SearchCommand.SUGADD, args.toArray(String[]::new));
+            }
+            pipeline.sync();
+        }
+    }
+
+    private void warmNearCache() {
+        // Ranks run from least to most used, so this keeps the most used prefixes
+        jedis.zremrangeByRank(keyspace.prefixUsageKey(), 0, -(trackedPrefixes + 1L));
+        Map<String, Double> popularity = new HashMap<>();
+        for (Tuple tuple : jedis.zrangeWithScores(keyspace.titlePopularityKey(), 0, -1)) {
+            popularity.put(tuple.getElement(), tuple.getScore());
+        }
+        List<String> prefixes = jedis.zrevrange(keyspace.prefixUsageKey(), 0, hotPrefixes - 1);
+        autocompleteService.applyPopularity(popularity, prefixes);
+    }
+
+    private String toJson(Map<String, Object> payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not serialize " + payload, e);
+        }
+    }
+}
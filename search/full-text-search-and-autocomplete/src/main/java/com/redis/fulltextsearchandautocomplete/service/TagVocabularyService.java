@@ -0,0 +1,196 @@
+package com.redis.fulltextsearchandautocomplete.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redis.fulltextsearchandautocomplete.domain.Movie;
+import com.redis.fulltextsearchandautocomplete.repository.MovieBulkOperations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.search.FieldName;
+
+import java.util.*;
+
+/**
+ * Local snapshot of the {@code genres} and {@code cast} tag values of every movie,
+ * with the number of documents carrying each value.
+ * <p>
+ * Seeded from the index at startup and after every reindex, then adjusted from {@link MoviesChangedEvent}s,
+ * so reads never touch Redis. The tags last seen for each movie are kept to turn an
+ * overwrite into a decrement of the old values and an increment of the new ones.
+ */
+@Service
+public class TagVocabularyService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TagVocabularyService.class);
+
+    private record MovieTags(List<String> genres, List<String> cast) {
+    }
+
+    private final MovieBulkOperations movieBulkOperations;
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, MovieTags> tagsById = new HashMap<>();
+    private final Map<String, Long> genreCounts = new HashMap<>();
+    private final Map<String, Long> castCounts = new HashMap<>();
+    private volatile Map<String, Long> genreSnapshot = Map.of();
+    private volatile Map<String, Long> castSnapshot = Map.of();
+    private volatile boolean ready;
+
+    public TagVocabularyService(MovieBulkOperations movieBulkOperations, ObjectMapper objectMapper) {
+        this.movieBulkOperations = movieBulkOperations;
+        this.objectMapper = objectMapper;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return genre to number of movies in that genre, sorted by genre
+     */
+    public Map<String, Long> getGenreCounts() {
+        return genreSnapshot;
+    }
+
+    /**
+     * @return cast member to number of movies they appear in, sorted by name
+     */
+    public Map<String, Long> getCastCounts() {
+        return castSnapshot;
+    }
+
+    /**
+     * @return the known cast member spelled closest to {@code name}, within {@code maxDistance} edits,
+     * ignoring case. Empty when the name is already known or nothing is close enough.
+     */
+    public Optional<String> closestCastMember(String name, int maxDistance) {
+        String wanted = name.toLowerCase(Locale.ROOT);
+        String closest = null;
+        int closestDistance = maxDistance + 1;
+        for (String actor : castSnapshot.keySet()) {
+            if (Math.abs(actor.length() - wanted.length()) >= closestDistance) {
+                continue;
+            }
+            int distance = editDistance(actor.toLowerCase(Locale.ROOT), wanted, closestDistance);
+            if (distance == 0) {
+                return Optional.empty();
+            }
+            if (distance < closestDistance) {
+                closest = actor;
+                closestDistance = distance;
+            }
+        }
+        return Optional.ofNullable(closest);
+    }
+
+    @EventListener({ApplicationReadyEvent.class, MovieIndexSwappedEvent.class})
+    public void refresh() {
+        long startTime = System.currentTimeMillis();
+        try {
+            synchronized (this) {
+                tagsById.clear();
+                genreCounts.clear();
+                castCounts.clear();
+                movieBulkOperations.forEachDocument(
+                        List.of(FieldName.of("$.genres").as("genres"), FieldName.of("$.cast").as("cast")),
+                        document -> put(
+                                (String) document.get("id"),
+                                new MovieTags(readList(document.get("genres")), readList(document.get("cast")))
+                        )
+                );
+                publishSnapshots();
+            }
+            ready = true;
+            logger.info("Built tag vocabulary with {} genres and {} cast members in {} ms",
+                    genreSnapshot.size(), castSnapshot.size(), System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            ready = false;
+            logger.error("Could not build tag vocabulary", e);
+        }
+    }
+
+    @EventListener
+    public synchronized void onMoviesChanged(MoviesChangedEvent event) {
+        for (Movie movie : event.saved()) {
+            put(movie.getId(), new MovieTags(nullToEmpty(movie.getGenres()), nullToEmpty(movie.getCast())));
+        }
+        for (Movie movie : event.deleted()) {
+            remove(movie.getId());
+        }
+        publishSnapshots();
+    }
+
+    private void put(String id, MovieTags tags) {
+        if (id == null) {
+            return;
+        }
+        remove(id);
+        tagsById.put(id, tags);
+        tags.genres().forEach(genre -> genreCounts.merge(genre, 1L, Long::sum));
+        tags.cast().forEach(actor -> castCounts.merge(actor, 1L, Long::sum));
+    }
+
+    private void remove(String id) {
+        MovieTags previous = id == null ? null : tagsById.remove(id);
+        if (previous == null) {
+            return;
+        }
+        previous.genres().forEach(genre -> decrement(genreCounts, genre));
+        previous.cast().forEach(actor -> decrement(castCounts, actor));
+    }
+
+    private static void decrement(Map<String, Long> counts, String value) {
+        counts.computeIfPresent(value, (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private void publishSnapshots() {
+        genreSnapshot = Collections.unmodifiableMap(new TreeMap<>(genreCounts));
+        castSnapshot = Collections.unmodifiableMap(new TreeMap<>(castCounts));
+    }
+
+    private List<String> readList(Object value) {
+        if (value == null) {
+            return List.of();
+        }
+        try {
+            return objectMapper.readValue(value.toString(), new TypeReference<>() {});
+        } catch (JsonProcessingException e) {
+            return List.of(value.toString());
+        }
+    }
+
+    /**
+     * Levenshtein distance, giving up with {@code limit} as soon as every alignment exceeds it.
+     */
+    private static int editDistance(String a, String b, int limit) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMinimum = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+                rowMinimum = Math.min(rowMinimum, current[j]);
+            }
+            if (rowMinimum >= limit) {
+                return limit;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    private static List<String> nullToEmpty(List<String> values) {
+        return values == null ? List.of() : values;
+    }
+}
@@ -11,6 +11,7 @@ let selectedGenreIndex = -1; // Track selected genre in dropdown
 let allActors = []; // Store all available actors
 let filteredActors = []; // Store filtered actors based on search
 let selectedCastIndex = -1; // Track selected actor in dropdown
+let loadedMovies = []; // Movies shown so far for the current search
 
 // Debounce function to limit how often a function can be called
 function debounce(func, wait) {
@@ -119,13 +120,25 @@ function selectAutocompleteSuggestion(suggestion) {
     const searchInput = document.getElementById('search-input');
     // Try different possible property names for the suggestion text
     const suggestionText = suggestion.text || suggestion.value || suggestion.label || suggestion.suggestion || suggestion;
+    recordSuggestionSelection(searchInput.value, suggestionText);
     searchInput.value = suggestionText;
     hideAutocompleteResults();
     searchInput.focus();
 }
 
+// Function to report a picked suggestion, used to rank suggestions by popularity
+function recordSuggestionSelection(prefix, title) {
+    fetch('/suggestions/selections', {
+        method: 'POST',
+        headers: { 'Content-Type': 'application/json' },
+        body: JSON.stringify({ prefix: prefix, title: title })
+    }).catch(error => {
+        console.error('Error recording suggestion selection:', error);
+    });
+}
+
 // Function to search movies
-function searchMovies(title, extract, cast, year, genres) {
+function searchMovies(title, extract, cast, year, genres, pageToken) {
     console.log(`Searching movies with title: ${title}, extract: ${extract}, cast: ${cast}, year: ${year}, genres: ${genres}`);
 
     // Build the URL with query parameters
@@ -156,6 +169,13 @@ function searchMovies(title, extract, cast, year, genres) {
         });
     }
 
+    if (pageToken) {
+        params.push(`pageToken=${encodeURIComponent(pageToken)}`);
+    }
+
+    // Let Redis return highlighted snippets instead of full extracts
+    params.push('highlight=true');
+
     url += params.join('&');
 
     return fetch(url)
@@ -175,28 +195,62 @@ function searchMovies(title, extract, cast, year, genres) {
         });
 }
 
+// Function to describe the corrections applied when the exact search found nothing
+function didYouMeanText(didYouMean) {
+    if (!didYouMean) {
+        return '';
+    }
+    const corrections = [];
+    if (didYouMean.title) {
+        corrections.push(`title "${didYouMean.title}"`);
+    }
+    if (didYouMean.text) {
+        corrections.push(`text "${didYouMean.text}"`);
+    }
+    if (didYouMean.cast) {
+        corrections.push(`cast "${didYouMean.cast.join(', ')}"`);
+    }
+    return corrections.length > 0 ? ` - did you mean ${corrections.join(', ')}?` : ' - showing approximate matches';
+}
+
 // Function to display search results
-function displaySearchResults(results) {
+function displaySearchResults(results, append) {
     const resultsContainer = document.getElementById('search-results');
     const resultsCount = document.getElementById('results-count');
 
-    if (!results || !results.movies || results.movies.length === 0) {
-        resultsCount.textContent = 'No movies found';
+    loadedMovies = append ? loadedMovies.concat(results.movies || []) : (results.movies || []);
+
+    if (loadedMovies.length === 0) {
+        resultsCount.textContent = `No movies found${didYouMeanText(results.didYouMean)}`;
         resultsContainer.innerHTML = '<p class="no-results">No movies match your search criteria. Try adjusting your filters.</p>';
         return;
     }
 
     // Display search time and results count
     const searchTime = results.searchTime || 0;
-    resultsCount.textContent = `Found ${results.count} movie${results.count !== 1 ? 's' : ''} in ${searchTime} ms`;
+    resultsCount.textContent = `Found ${results.count} movie${results.count !== 1 ? 's' : ''} in ${searchTime} ms${didYouMeanText(results.didYouMean)}`;
 
     let html = '';
-    results.movies.forEach((movie, index) => {
+    loadedMovies.forEach((movie, index) => {
         html += `<div class="movie-card" data-movie-index="${index}">${movie.thumbnail ? `<img src="${movie.thumbnail}" alt="${movie.title}" class="movie-thumbnail">` : ''}<div class="movie-info"><h3 class="movie-title">${movie.title}</h3><p class="movie-year">${movie.year}</p>${movie.cast && movie.cast.length > 0 ? `<p class="movie-cast"><strong>Cast:</strong> ${movie.cast.join(', ')}</p>` : ''}${movie.genres && movie.genres.length > 0 ? `<p class="movie-genres"><strong>Genres:</strong> ${movie.genres.join(', ')}</p>` : ''}${movie.extract ? `<div class="extract-container"><p class="movie-extract" id="extract-${index}">${movie.extract}</p><span class="read-more-btn" data-target="extract-${index}">Read more</span></div>` : ''}</div></div>`;
     });
 
+    if (results.nextPageToken) {
+        html += `<button type="button" id="load-more-btn" class="load-more-btn">Load more</button>`;
+    }
+
     resultsContainer.innerHTML = html;
 
+    const loadMoreButton = document.getElementById('load-more-btn');
+    if (loadMoreButton) {
+        loadMoreButton.addEventListener('click', function() {
+            searchMovies(currentTitle, currentExtract, currentCast, currentYear, currentGenres, results.nextPageToken)
+                .then(nextPage => {
+                    displaySearchResults(nextPage, true);
+                });
+        });
+    }
+
     // Add event listeners to "Read more" buttons
     document.querySelectorAll('.read-more-btn').forEach(button => {
         button.addEventListener('click', function() {
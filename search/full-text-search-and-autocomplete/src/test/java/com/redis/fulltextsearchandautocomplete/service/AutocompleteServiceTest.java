@@ -0,0 +1,132 @@
+package com.redis.fulltextsearchandautocomplete.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redis.fulltextsearchandautocomplete.domain.Movie;
+import com.redis.fulltextsearchandautocomplete.repository.MovieBulkOperations;
+import com.redis.fulltextsearchandautocomplete.repository.MovieKeyspace;
+import com.redis.fulltextsearchandautocomplete.repository.MovieRepository;
+import com.redis.om.spring.autocomplete.Suggestion;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.JedisPooled;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AutocompleteServiceTest {
+
+    private final MovieRepository movieRepository = mock(MovieRepository.class);
+    private final MovieBulkOperations movieBulkOperations = mock(MovieBulkOperations.class);
+    private final MovieKeyspace keyspace = mock(MovieKeyspace.class);
+    private final AutocompleteService service = new AutocompleteService(
+            movieRepository,
+            movieBulkOperations,
+            mock(JedisPooled.class),
+            keyspace,
+            new ObjectMapper(),
+            true
+    );
+
+    @BeforeEach
+    void buildNearCache() {
+        service.refresh();
+        // More titles share the prefix "the" than a single alphabetical page holds
+        service.onMoviesChanged(MoviesChangedEvent.saved(IntStream.range(0, 500)
+                .mapToObj(i -> movie("m" + i, String.format("The Movie %03d", i)))
+                .toList()));
+    }
+
+    @Test
+    void unpickedMatchesAreAlphabetical() {
+        assertThat(titles(service.suggest("the movie 1")))
+                .containsExactly("The Movie 100", "The Movie 101", "The Movie 102", "The Movie 103", "The Movie 104");
+    }
+
+    @Test
+    void pickedTitlesRankFirstWhereverTheySortUnderThePrefix() {
+        service.applyPopularity(Map.of("The Movie 499", 7.0, "The Movie 350", 3.0), List.of());
+
+        assertThat(titles(service.suggest("T")))
+                .containsExactly("The Movie 499", "The Movie 350", "The Movie 000", "The Movie 001", "The Movie 002");
+    }
+
+    @Test
+    void picksOfOtherPrefixesOrRemovedTitlesAreIgnored() {
+        service.onMoviesChanged(MoviesChangedEvent.saved(List.of(movie("alien", "Alien"))));
+        service.applyPopularity(Map.of("Alien", 9.0, "The Removed Movie", 5.0, "The Movie 250", 1.0), List.of());
+
+        assertThat(titles(service.suggest("the")))
+                .containsExactly("The Movie 250", "The Movie 000", "The Movie 001", "The Movie 002", "The Movie 003");
+        assertThat(titles(service.suggest("al"))).containsExactly("Alien");
+    }
+
+    @Test
+    void hotPrefixesArePrecomputedWithTheSameRanking() {
+        service.applyPopularity(Map.of("The Movie 420", 2.0), List.of("The M"));
+
+        assertThat(titles(service.suggest("the m"))).first().isEqualTo("The Movie 420");
+    }
+
+    @Test
+    void exactTitleLookupIgnoresLongerTitlesWithTheSamePrefix() {
+        service.onMoviesChanged(MoviesChangedEvent.saved(List.of(movie("alien", "Alien"), movie("aliens", "Aliens"))));
+
+        assertThat(service.payloadsFor(List.of("Alien", "Aliens", "Alie")))
+                .containsOnlyKeys("Alien", "Aliens")
+                .containsEntry("Alien", Map.of("extract", "About Alien"));
+    }
+
+    @Test
+    void changesDuringARebuildAreKeptAfterTheSwap() {
+        doAnswer(invocation -> {
+            Consumer<Map<String, Object>> consumer = invocation.getArgument(1);
+            consumer.accept(Map.of("id", "alien", "title", "Alien"));
+            // Written and deleted while the scan is running
+            service.onMoviesChanged(MoviesChangedEvent.saved(List.of(movie("zodiac", "Zodiac"))));
+            service.onMoviesChanged(MoviesChangedEvent.deleted(List.of(movie("alien", "Alien"))));
+            return null;
+        }).when(movieBulkOperations).forEachDocument(anyList(), any());
+
+        service.refresh();
+
+        assertThat(titles(service.suggest("zo"))).containsExactly("Zodiac");
+        assertThat(service.suggest("al")).isEmpty();
+        assertThat(service.suggest("the")).isEmpty();
+    }
+
+    @Test
+    void fallsBackToRedisUntilRebuiltFromTheLiveGeneration() {
+        List<Suggestion> fromRedis = List.of(new Suggestion("Alien", Map.of()));
+        when(movieRepository.autoCompleteTitle(anyString(), any())).thenReturn(fromRedis);
+        when(keyspace.generation()).thenReturn(1L);
+
+        assertThat(service.isLocal()).isFalse();
+        assertThat(service.suggest("the")).isSameAs(fromRedis);
+
+        service.refresh();
+
+        assertThat(service.isLocal()).isTrue();
+    }
+
+    private static Movie movie(String id, String title) {
+        Movie movie = new Movie();
+        movie.setId(id);
+        movie.setTitle(title);
+        movie.setExtract("About " + title);
+        return movie;
+    }
+
+    private static List<String> titles(List<Suggestion> suggestions) {
+        return suggestions.stream().map(Suggestion::getValue).toList();
+    }
+}
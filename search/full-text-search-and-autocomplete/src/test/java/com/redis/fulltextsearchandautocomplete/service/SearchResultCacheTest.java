@@ -0,0 +1,106 @@
+package com.redis.fulltextsearchandautocomplete.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchResultCacheTest {
+
+    private static final Map<String, Object> RESULT = Map.of("count", 1L, "movies", List.of());
+
+    private final SearchResultCache cache = new SearchResultCache(2);
+
+    @Test
+    void returnsEntriesOfTheCurrentVersion() {
+        SearchResultCache.Key key = key("Alien");
+        long version = cache.indexVersion();
+
+        cache.put(key, version, RESULT);
+
+        assertThat(cache.get(key, version)).contains(RESULT);
+    }
+
+    @Test
+    void invalidationTurnsOlderEntriesIntoMisses() {
+        SearchResultCache.Key key = key("Alien");
+        long version = cache.indexVersion();
+        cache.put(key, version, RESULT);
+
+        cache.invalidate();
+
+        assertThat(cache.indexVersion()).isEqualTo(version + 1);
+        assertThat(cache.get(key, cache.indexVersion())).isEmpty();
+        assertThat(cache.get(key, version)).isEmpty();
+    }
+
+    @Test
+    void resultComputedBeforeAnInvalidationIsNotStored() {
+        SearchResultCache.Key key = key("Alien");
+        // A search read the version, then a write landed before it finished
+        long version = cache.indexVersion();
+        cache.invalidate();
+
+        cache.put(key, version, RESULT);
+
+        assertThat(cache.get(key, cache.indexVersion())).isEmpty();
+        assertThat(cache.stats()).containsEntry("entries", 0);
+    }
+
+    @Test
+    void keysAreNormalized() {
+        long version = cache.indexVersion();
+        cache.put(SearchResultCache.Key.of("search", "  Alien ", null, List.of("Weaver", "Hurt"), 1979,
+                List.of(), 0, 10, false), version, RESULT);
+
+        SearchResultCache.Key lookup = SearchResultCache.Key.of("search", "alien", " ", List.of("hurt", "weaver"), 1979,
+                null, 0, 10, false);
+
+        assertThat(cache.get(lookup, version)).contains(RESULT);
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntry() {
+        long version = cache.indexVersion();
+        cache.put(key("Alien"), version, RESULT);
+        cache.put(key("Blade Runner"), version, RESULT);
+        cache.get(key("Alien"), version);
+
+        cache.put(key("Contact"), version, RESULT);
+
+        assertThat(cache.get(key("Alien"), version)).isPresent();
+        assertThat(cache.get(key("Blade Runner"), version)).isEmpty();
+        assertThat(cache.get(key("Contact"), version)).isPresent();
+    }
+
+    @Test
+    void zeroMaxEntriesDisablesTheCache() {
+        SearchResultCache disabled = new SearchResultCache(0);
+        long version = disabled.indexVersion();
+
+        disabled.put(key("Alien"), version, RESULT);
+
+        assertThat(disabled.isEnabled()).isFalse();
+        assertThat(disabled.get(key("Alien"), version)).isEmpty();
+    }
+
+    @Test
+    void statsCountHitsAndMisses() {
+        long version = cache.indexVersion();
+        cache.put(key("Alien"), version, RESULT);
+        cache.get(key("Alien"), version);
+        cache.get(key("Contact"), version);
+
+        assertThat(cache.stats())
+                .containsEntry("hits", 1L)
+                .containsEntry("misses", 1L)
+                .containsEntry("hitRate", 0.5)
+                .containsEntry("entries", 1);
+    }
+
+    private static SearchResultCache.Key key(String title) {
+        return SearchResultCache.Key.of("search", title, null, null, null, null, 0, 10, false);
+    }
+}
@@ -0,0 +1,50 @@
+package com.redis.vectorsearchspringai
+
+import com.fasterxml.jackson.core.type.TypeReference
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.ObjectReader
+import org.springframework.ai.document.Document
+import org.springframework.stereotype.Component
+
+/**
+ * Maps Spring AI documents returned by the vector store to [Movie]s.
+ *
+ * The extract is the document text. The metadata fields are stored as native JSON values,
+ * `cast` and `genres` as arrays, but the Redis vector store hands them back as their JSON
+ * text, so lists are read with a reader prepared once and numbers are parsed directly.
+ */
+@Component
+class MovieDocumentMapper(objectMapper: ObjectMapper) {
+
+    private val stringListReader: ObjectReader = objectMapper.readerFor(object : TypeReference<List<String>>() {})
+
+    fun toMatch(document: Document): MovieMatch = MovieMatch(toMovie(document), document.score)
+
+    fun toMovie(document: Document): Movie {
+        val metadata = document.metadata
+        return Movie(
+            title = metadata["title"] as? String ?: "Unknown Title",
+            year = toInt(metadata["year"]),
+            cast = toStringList(metadata["cast"]),
+            genres = toStringList(metadata["genres"]),
+            extract = document.text,
+            thumbnail = metadata["thumbnail"] as? String
+        )
+    }
+
+    private fun toInt(value: Any?): Int = when (value) {
+        is Number -> value.toInt()
+        is String -> value.toIntOrNull() ?: value.toDoubleOrNull()?.toInt() ?: 0
+        else -> 0
+    }
+
+    private fun toStringList(value: Any?): List<String> = when (value) {
+        is List<*> -> value.filterIsInstance<String>()
+        is String -> when {
+            value.isBlank() -> emptyList()
+            value.startsWith("[") -> stringListReader.readValue(value)
+            else -> value.split(",")
+        }
+        else -> emptyList()
+    }
+}
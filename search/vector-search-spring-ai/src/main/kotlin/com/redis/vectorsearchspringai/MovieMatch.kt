@@ -0,0 +1,10 @@
+package com.redis.vectorsearchspringai
+
+/**
+ * A search hit: the movie and its similarity score, serialized as `first` and `second`
+ * like the pairs returned by the other search demos.
+ */
+data class MovieMatch(
+    val first: Movie,
+    val second: Double?
+)
@@ -0,0 +1,7 @@
+package com.redis.vectorsearchspringai
+
+data class MovieSearchResult(
+    val movies: List<MovieMatch>,
+    val count: Int,
+    val searchTime: Long
+)
@@ -19,6 +19,7 @@ class MovieService(
     private val resourceLoader: ResourceLoader,
     private val objectMapper: ObjectMapper,
     private val redisModuleOperations: RedisModulesOperations<String>,
+    private val movieDocumentMapper: MovieDocumentMapper,
 ) {
     private val log = LoggerFactory.getLogger(MovieService::class.java)
 
@@ -59,7 +60,7 @@ class MovieService(
         year: Int? = null,
         genres: List<String>,
         numberOfNearestNeighbors: Int
-    ): Map<String, Any> {
+    ): MovieSearchResult {
         val b = FilterExpressionBuilder()
 
         val logger = LoggerFactory.getLogger("SearchService")
@@ -105,66 +106,15 @@ class MovieService(
                 .build()
         ) ?: emptyList()
 
-        val transformedResults = searchResults.map { result ->
-            // Log the result structure for debugging
-            logger.info("Result: {}", result)
-            logger.info("Result metadata: {}", result.metadata)
-            logger.info("Result class: {}", result.javaClass.name)
-
-            // Try to access properties using reflection
-            val properties = result.javaClass.declaredFields
-            properties.forEach { field ->
-                field.isAccessible = true
-                try {
-                    logger.info("Property: {} = {}", field.name, field.get(result))
-                } catch (e: Exception) {
-                    logger.error("Error accessing property: {}", field.name, e)
-                }
-            }
-
-            val metadata = result.metadata
-
-            var extractContent: String? = null
-            try {
-                // Try different property names that might contain the content
-                val contentField = result.javaClass.declaredFields.find { it.name == "content" || it.name == "text" || it.name == "value" }
-                if (contentField != null) {
-                    contentField.isAccessible = true
-                    extractContent = contentField.get(result) as? String
-                    logger.info("Found content in field: {}", contentField.name)
-                } else {
-                    extractContent = result.toString()
-                    logger.info("Using result.toString() for content")
-                }
-            } catch (e: Exception) {
-                logger.error("Error extracting content", e)
-            }
-
-            val movie = Movie(
-                title = metadata["title"] as? String ?: "Unknown Title",
-                year = (metadata["year"] as? String)?.toInt() ?: 0,
-                cast = (metadata["cast"] as? String)?.replace("\"", "")?.replace("[", "")?.replace("]", "")?.split(",") ?: emptyList(),
-                genres = (metadata["genres"] as? String)?.replace("\"", "")?.replace("[", "")?.replace("]", "")?.split(",") ?: emptyList(),
-                extract = extractContent,
-                thumbnail = metadata["thumbnail"] as? String
-            )
-
-            logger.info("Created movie: {}", movie)
-
-            object {
-                val first = movie
-                val second = result.score
-            }
-        }
+        val matches = searchResults.map(movieDocumentMapper::toMatch)
 
         val elapsed = System.currentTimeMillis() - start
         logger.info("Search completed in {} ms", elapsed)
-        logger.info("Transformed {} results", transformedResults.size)
 
-        return mapOf(
-            "movies" to transformedResults,
-            "count" to transformedResults.size,
-            "searchTime" to elapsed
+        return MovieSearchResult(
+            movies = matches,
+            count = matches.size,
+            searchTime = elapsed
         )
     }
 
@@ -0,0 +1,119 @@
+package com.redis.vectorsearchspringai
+
+import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
+import org.junit.jupiter.api.Tag
+import org.junit.jupiter.api.Test
+import org.slf4j.LoggerFactory
+import org.springframework.ai.document.Document
+import java.lang.management.ManagementFactory
+import kotlin.test.assertEquals
+
+private const val HITS = 100
+private const val WARMUP_ROUNDS = 500
+private const val MEASURED_ROUNDS = 2_000
+
+/**
+ * Compares [MovieDocumentMapper] with the reflective mapping `MovieService.searchMovies` used
+ * before, on 100 hits shaped like the ones the Redis vector store returns. The equivalence
+ * check runs with the other tests. The timing is tagged `benchmark` and left out of `test`;
+ * it needs no Redis or model:
+ *
+ *     ./gradlew benchmark
+ *
+ * The old mapping logged every field of every hit at INFO. Here those messages are only
+ * formatted, not written, so the numbers understate what the old path cost in production.
+ */
+class MovieDocumentMapperBenchmarkTest {
+
+    private val log = LoggerFactory.getLogger(MovieDocumentMapperBenchmarkTest::class.java)
+
+    private val documents = (0 until HITS).map { i ->
+        Document.builder()
+            .id("movies:$i")
+            .text("Movie number $i follows a retired detective who returns for one last case in a city full of secrets.")
+            .metadata(
+                mapOf(
+                    "title" to "Movie $i",
+                    "year" to (1981 + i % 40).toString(),
+                    "cast" to """["Actor ${i}a","Actor ${i}b","Actor ${i}c"]""",
+                    "genres" to """["Drama","Thriller"]""",
+                    "thumbnail" to "https://example.org/$i.jpg",
+                    "vector_score" to (i / 1000.0).toString()
+                )
+            )
+            .score(1 - i / 1000.0)
+            .build()
+    }
+    private val mapper = MovieDocumentMapper(jacksonObjectMapper())
+
+    @Test
+    fun mapsHitsLikeTheReflectiveMapping() {
+        documents.forEach { document ->
+            assertEquals(reflectiveMatch(document), mapper.toMatch(document))
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    fun comparesTypedAndReflectiveMapping() {
+        val reflective = measure("reflective") { document -> reflectiveMatch(document) }
+        val typed = measure("typed") { document -> mapper.toMatch(document) }
+        log.info(String.format("typed mapping is %.1fx faster and allocates %.1fx less per %d hits",
+            reflective.first / typed.first, reflective.second / typed.second, HITS))
+    }
+
+    /**
+     * @return nanoseconds and allocated bytes per round of [HITS] hits
+     */
+    private fun measure(name: String, map: (Document) -> Any): Pair<Double, Double> {
+        var sink = 0
+        repeat(WARMUP_ROUNDS) { documents.forEach { sink += map(it).hashCode() } }
+
+        val threads = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+        val allocatedBefore = threads.currentThreadAllocatedBytes
+        val start = System.nanoTime()
+        repeat(MEASURED_ROUNDS) { documents.forEach { sink += map(it).hashCode() } }
+        val nanosPerRound = (System.nanoTime() - start).toDouble() / MEASURED_ROUNDS
+        val bytesPerRound = (threads.currentThreadAllocatedBytes - allocatedBefore).toDouble() / MEASURED_ROUNDS
+
+        log.info(String.format("%-10s %10.1f us / %d hits %12.0f bytes / %d hits (%d)",
+            name, nanosPerRound / 1_000, HITS, bytesPerRound, HITS, sink and 1))
+        return nanosPerRound to bytesPerRound
+    }
+
+    /**
+     * The mapping `MovieService.searchMovies` did before [MovieDocumentMapper], with its log
+     * statements reduced to building their messages.
+     */
+    private fun reflectiveMatch(result: Document): MovieMatch {
+        val messages = StringBuilder()
+        messages.append("Result: ").append(result)
+        messages.append("Result metadata: ").append(result.metadata)
+        messages.append("Result class: ").append(result.javaClass.name)
+        result.javaClass.declaredFields.forEach { field ->
+            field.isAccessible = true
+            messages.append("Property: ").append(field.name).append(" = ").append(field.get(result))
+        }
+
+        val metadata = result.metadata
+        val contentField = result.javaClass.declaredFields.find { it.name == "content" || it.name == "text" || it.name == "value" }
+        val extractContent = if (contentField != null) {
+            contentField.isAccessible = true
+            contentField.get(result) as? String
+        } else {
+            result.toString()
+        }
+
+        val movie = Movie(
+            title = metadata["title"] as? String ?: "Unknown Title",
+            year = (metadata["year"] as? String)?.toInt() ?: 0,
+            cast = (metadata["cast"] as? String)?.replace("\"", "")?.replace("[", "")?.replace("]", "")?.split(",") ?: emptyList(),
+            genres = (metadata["genres"] as? String)?.replace("\"", "")?.replace("[", "")?.replace("]", "")?.split(",") ?: emptyList(),
+            extract = extractContent,
+            thumbnail = metadata["thumbnail"] as? String
+        )
+        messages.append("Created movie: ").append(movie)
+
+        return MovieMatch(movie, result.score)
+    }
+}
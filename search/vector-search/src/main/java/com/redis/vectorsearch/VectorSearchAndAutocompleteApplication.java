@@ -1,28 +1,48 @@
 package com.redis.vectorsearch;
 
 import com.redis.vectorsearch.service.EmbeddingStatusService;
+import com.redis.vectorsearch.service.ExtractChunkService;
+import com.redis.vectorsearch.service.HnswTuningBenchmark;
 import com.redis.vectorsearch.service.MovieService;
+import com.redis.vectorsearch.service.VectorIndexService;
 import com.redis.om.spring.annotations.EnableRedisDocumentRepositories;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableRedisDocumentRepositories
+@EnableScheduling
 public class VectorSearchAndAutocompleteApplication {
     public static void main(String[] args) {
         SpringApplication.run(VectorSearchAndAutocompleteApplication.class, args);
     }
 
     @Bean
-    CommandLineRunner loadData(EmbeddingStatusService embeddingStatusService, MovieService movieService) {
+    CommandLineRunner loadData(
+            EmbeddingStatusService embeddingStatusService,
+            MovieService movieService,
+            VectorIndexService vectorIndexService,
+            ExtractChunkService extractChunkService,
+            HnswTuningBenchmark hnswTuningBenchmark
+    ) {
         return args -> {
-            if (embeddingStatusService.areEmbeddingsReady()) {
+            movieService.adoptLegacyIds();
+            if (embeddingStatusService.refresh()) {
                 System.out.println("Data already loaded. Skipping data load.");
-                return;
+            } else {
+                movieService.loadAndSaveMovies("movies.json");
+            }
+            vectorIndexService.applyPrecision();
+            if (extractChunkService.isEnabled()) {
+                extractChunkService.indexMissingChunks();
+            }
+            embeddingStatusService.finished();
+            if (hnswTuningBenchmark.isEnabled()) {
+                hnswTuningBenchmark.run();
             }
-            movieService.loadAndSaveMovies("movies.json");
         };
     }
 }
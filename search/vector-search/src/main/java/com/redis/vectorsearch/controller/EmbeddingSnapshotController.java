@@ -0,0 +1,44 @@
+package com.redis.vectorsearch.controller;
+
+import com.redis.vectorsearch.service.EmbeddingSnapshot;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+public class EmbeddingSnapshotController {
+
+    private final EmbeddingSnapshot embeddingSnapshot;
+
+    public EmbeddingSnapshotController(EmbeddingSnapshot embeddingSnapshot) {
+        this.embeddingSnapshot = embeddingSnapshot;
+    }
+
+    @PostMapping("/embeddings/snapshot")
+    public ResponseEntity<Object> exportSnapshot() {
+        long startTime = System.currentTimeMillis();
+
+        int exported;
+        try {
+            exported = embeddingSnapshot.export();
+        } catch (IOException e) {
+            return ResponseEntity
+                .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "Could not write embedding snapshot: " + e.getMessage()));
+        }
+
+        long endTime = System.currentTimeMillis();
+        long exportTime = endTime - startTime;
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("vectors", exported);
+        result.put("exportTime", exportTime);
+
+        return ResponseEntity.ok(result);
+    }
+}
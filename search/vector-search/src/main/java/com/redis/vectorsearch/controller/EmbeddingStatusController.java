@@ -0,0 +1,32 @@
+package com.redis.vectorsearch.controller;
+
+import com.redis.vectorsearch.service.EmbeddingStatusService;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+public class EmbeddingStatusController {
+
+    private final EmbeddingStatusService embeddingStatusService;
+
+    public EmbeddingStatusController(EmbeddingStatusService embeddingStatusService) {
+        this.embeddingStatusService = embeddingStatusService;
+    }
+
+    @GetMapping("/embeddings/status")
+    public ResponseEntity<Object> status() {
+        return ResponseEntity.ok(embeddingStatusService.status());
+    }
+
+    /**
+     * Server-sent "status" events with the same body as {@code /embeddings/status}, one per
+     * change, until the embeddings are ready.
+     */
+    @GetMapping(value = "/embeddings/status/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamStatus() {
+        return embeddingStatusService.subscribe();
+    }
+}
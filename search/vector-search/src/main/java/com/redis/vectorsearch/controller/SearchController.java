@@ -1,18 +1,24 @@
 package com.redis.vectorsearch.controller;
 
+import com.redis.vectorsearch.domain.BatchSearchRequest;
 import com.redis.vectorsearch.repository.MovieRepository;
 import com.redis.vectorsearch.service.EmbeddingStatusService;
+import com.redis.vectorsearch.service.ExtractChunkService;
 import com.redis.vectorsearch.service.SearchService;
 import com.redis.om.spring.autocomplete.Suggestion;
 import com.redis.om.spring.repository.query.autocomplete.AutoCompleteOptions;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Set;
@@ -23,20 +29,30 @@ public class SearchController {
     private final SearchService searchService;
     private final MovieRepository movieRepository;
     private final EmbeddingStatusService embeddingStatusService;
-
-    public SearchController(SearchService searchService, MovieRepository movieRepository, EmbeddingStatusService embeddingStatusService) {
+    private final ExtractChunkService extractChunkService;
+    private final int maxBatchQueries;
+    private final int maxNearestNeighbors;
+
+    public SearchController(
+            SearchService searchService,
+            MovieRepository movieRepository,
+            EmbeddingStatusService embeddingStatusService,
+            ExtractChunkService extractChunkService,
+            @Value("${search.batch.max-queries:100}") int maxBatchQueries,
+            @Value("${search.max-nearest-neighbors:1000}") int maxNearestNeighbors
+    ) {
         this.searchService = searchService;
         this.movieRepository = movieRepository;
         this.embeddingStatusService = embeddingStatusService;
+        this.extractChunkService = extractChunkService;
+        this.maxBatchQueries = maxBatchQueries;
+        this.maxNearestNeighbors = maxNearestNeighbors;
     }
 
     @GetMapping("/search/{q}")
     public ResponseEntity<Object> query(@PathVariable("q") String query) {
         if (!embeddingStatusService.areEmbeddingsReady()) {
-            long embeddedDocs = embeddingStatusService.getTotalDocNum();
-            return ResponseEntity
-                .status(HttpStatus.SERVICE_UNAVAILABLE)
-                .body(Map.of("error", "Embeddings are still being created (" + embeddedDocs + " of 10000 already created). This operation takes around two minutes to complete. Please try again later."));
+            return embeddingsNotReady();
         }
 
         long startTime = System.currentTimeMillis();
@@ -61,13 +77,55 @@ public class SearchController {
             @RequestParam(required = false) List<String> cast,
             @RequestParam(required = false) Integer year,
             @RequestParam(required = false) List<String> genres,
-            @RequestParam(required = false) Integer numberOfNearestNeighbors
+            @RequestParam(required = false) Integer numberOfNearestNeighbors,
+            @RequestParam(defaultValue = "vector") String mode,
+            @RequestParam(defaultValue = "rrf") String fusion,
+            @RequestParam(defaultValue = "0.5") double textWeight
     ) {
         if (!embeddingStatusService.areEmbeddingsReady()) {
-            long embeddedDocs = embeddingStatusService.getTotalDocNum();
-            return ResponseEntity
-                .status(HttpStatus.SERVICE_UNAVAILABLE)
-                .body(Map.of("error", "Embeddings are still being created (" + embeddedDocs + " of 10000 already created). This operation takes around two minutes to complete. Please try again later."));
+            return embeddingsNotReady();
+        }
+        if (!isValidNearestNeighbors(numberOfNearestNeighbors)) {
+            return invalidNearestNeighbors();
+        }
+
+        if ("chunked".equalsIgnoreCase(mode)) {
+            if (!extractChunkService.isEnabled()) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Passage search is disabled, set vectors.chunks.enabled=true"));
+            }
+            if (text == null || text.isBlank()) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Passage search needs a text"));
+            }
+            return ResponseEntity.ok(searchService.chunkedSearch(
+                    title,
+                    text,
+                    cast,
+                    year,
+                    genres,
+                    numberOfNearestNeighbors
+            ));
+        }
+
+        if ("hybrid".equalsIgnoreCase(mode)) {
+            SearchService.Fusion fusionMethod;
+            try {
+                fusionMethod = SearchService.Fusion.valueOf(fusion.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Unknown fusion " + fusion + ", expected rrf or weighted"));
+            }
+            if (textWeight < 0 || textWeight > 1) {
+                return ResponseEntity.badRequest().body(Map.of("error", "textWeight must be between 0 and 1"));
+            }
+            return ResponseEntity.ok(searchService.hybridSearch(
+                    title,
+                    text,
+                    cast,
+                    year,
+                    genres,
+                    numberOfNearestNeighbors,
+                    fusionMethod,
+                    textWeight
+            ));
         }
 
         return ResponseEntity.ok(searchService.search(
@@ -80,13 +138,52 @@ public class SearchController {
         ));
     }
 
+    @PostMapping("/search/batch")
+    public ResponseEntity<Object> batchSearch(@RequestBody BatchSearchRequest request) {
+        if (!embeddingStatusService.areEmbeddingsReady()) {
+            return embeddingsNotReady();
+        }
+
+        List<BatchSearchRequest.Query> queries = request.queries();
+        if (queries == null || queries.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "queries must not be empty"));
+        }
+        if (queries.size() > maxBatchQueries) {
+            return ResponseEntity.badRequest().body(Map.of("error", "At most " + maxBatchQueries + " queries are allowed per batch"));
+        }
+        if (queries.stream().anyMatch(query -> query.text() == null || query.text().isBlank())) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Every query needs a text"));
+        }
+        if (queries.stream().anyMatch(query -> !isValidNearestNeighbors(query.numberOfNearestNeighbors()))) {
+            return invalidNearestNeighbors();
+        }
+
+        return ResponseEntity.ok(searchService.batchSearch(queries));
+    }
+
+    @GetMapping("/movies/{id}/similar")
+    public ResponseEntity<Object> similar(
+            @PathVariable("id") String id,
+            @RequestParam(required = false) Integer numberOfNearestNeighbors
+    ) {
+        if (!embeddingStatusService.areEmbeddingsReady()) {
+            return embeddingsNotReady();
+        }
+        if (!isValidNearestNeighbors(numberOfNearestNeighbors)) {
+            return invalidNearestNeighbors();
+        }
+
+        return searchService.similar(id, numberOfNearestNeighbors)
+                .<ResponseEntity<Object>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity
+                        .status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "No movie with an embedded extract has id " + id)));
+    }
+
     @GetMapping("/genres")
     public ResponseEntity<Object> getAllGenres() {
         if (!embeddingStatusService.areEmbeddingsReady()) {
-            long embeddedDocs = embeddingStatusService.getTotalDocNum();
-            return ResponseEntity
-                .status(HttpStatus.SERVICE_UNAVAILABLE)
-                .body(Map.of("error", "Embeddings are still being created (" + embeddedDocs + " of 10000 already created). This operation takes around two minutes to complete. Please try again later."));
+            return embeddingsNotReady();
         }
 
         long startTime = System.currentTimeMillis();
@@ -103,4 +200,20 @@ public class SearchController {
 
         return ResponseEntity.ok(result);
     }
+
+    private boolean isValidNearestNeighbors(Integer numberOfNearestNeighbors) {
+        return numberOfNearestNeighbors == null
+                || (numberOfNearestNeighbors > 0 && numberOfNearestNeighbors <= maxNearestNeighbors);
+    }
+
+    private ResponseEntity<Object> invalidNearestNeighbors() {
+        return ResponseEntity.badRequest()
+                .body(Map.of("error", "numberOfNearestNeighbors must be between 1 and " + maxNearestNeighbors));
+    }
+
+    private ResponseEntity<Object> embeddingsNotReady() {
+        return ResponseEntity
+            .status(HttpStatus.SERVICE_UNAVAILABLE)
+            .body(Map.of("error", "Embeddings are still being created (" + embeddingStatusService.getTotalDocNum() + " of " + embeddingStatusService.getExpectedDocNum() + " already created). This operation takes around two minutes to complete. Progress is available at /embeddings/status. Please try again later."));
+    }
 }
@@ -0,0 +1,49 @@
+package com.redis.vectorsearch.controller;
+
+import com.redis.vectorsearch.service.VectorPrecisionReport;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+public class VectorIndexController {
+
+    private final VectorPrecisionReport vectorPrecisionReport;
+    private final int maxSampleSize;
+    private final int maxNearestNeighbors;
+
+    public VectorIndexController(
+            VectorPrecisionReport vectorPrecisionReport,
+            @Value("${vectors.precision-report.max-sample-size:200}") int maxSampleSize,
+            @Value("${search.max-nearest-neighbors:1000}") int maxNearestNeighbors
+    ) {
+        this.vectorPrecisionReport = vectorPrecisionReport;
+        this.maxSampleSize = maxSampleSize;
+        this.maxNearestNeighbors = maxNearestNeighbors;
+    }
+
+    @GetMapping("/vectors/precision-report")
+    public ResponseEntity<Object> precisionReport(
+            @RequestParam(defaultValue = "50") int sampleSize,
+            @RequestParam(defaultValue = "10") int k
+    ) {
+        if (sampleSize < 1 || sampleSize > maxSampleSize || k < 1 || k > maxNearestNeighbors) {
+            return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(Map.of("error", "sampleSize must be between 1 and " + maxSampleSize
+                        + " and k between 1 and " + maxNearestNeighbors));
+        }
+        try {
+            return ResponseEntity.ok(vectorPrecisionReport.report(sampleSize, k));
+        } catch (IllegalStateException e) {
+            return ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(Map.of("error", e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.redis.vectorsearch.domain;
+
+import java.util.List;
+
+/**
+ * Several vector searches answered in one call, each with the same parameters as {@code GET /search}.
+ */
+public record BatchSearchRequest(List<Query> queries) {
+
+    public record Query(
+            String text,
+            String title,
+            List<String> cast,
+            Integer year,
+            List<String> genres,
+            Integer numberOfNearestNeighbors
+    ) {
+    }
+}
@@ -29,6 +29,7 @@ public class Movie {
 
     private String href;
 
+    @Searchable
     @Vectorize(
             destination = "embeddedExtract",
             embeddingType = EmbeddingType.SENTENCE
@@ -0,0 +1,315 @@
+package com.redis.vectorsearch.repository;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redis.om.spring.indexing.RediSearchIndexer;
+import com.redis.vectorsearch.domain.Movie;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.springframework.stereotype.Repository;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.json.JsonSetParams;
+import redis.clients.jedis.json.Path2;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+import redis.clients.jedis.search.SearchProtocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Bulk operations on {@link Movie} documents that would take one round trip per movie
+ * through {@link MovieRepository}. Writes produce the same JSON document and title suggestion
+ * as {@link MovieRepository#saveAll}, but expect the embedding to be set already.
+ */
+@Repository
+public class MovieBulkOperations {
+
+    private static final int EXISTS_BATCH_SIZE = 1000;
+    private static final int SCAN_PAGE_SIZE = 1000;
+    private static final Path2 EMBEDDING_PATH = Path2.of("$.embeddedExtract");
+
+    private final JedisPooled jedis;
+    private final RediSearchIndexer indexer;
+    private final ObjectMapper objectMapper;
+
+    public MovieBulkOperations(JedisPooled jedis, RediSearchIndexer indexer, ObjectMapper objectMapper) {
+        this.jedis = jedis;
+        this.indexer = indexer;
+        // Leave unset fields out of the document, like Redis OM Spring does
+        this.objectMapper = objectMapper.copy().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    }
+
+    /**
+     * Derives a stable id from title and year, so that loading the same catalog twice
+     * finds the documents written the first time.
+     */
+    public static String idFor(Movie movie) {
+        String natural = movie.getTitle() + "|" + movie.getYear();
+        return UUID.nameUUIDFromBytes(natural.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    public String titleSuggestionKey() {
+        return "sugg:" + Movie.class.getSimpleName() + ":title";
+    }
+
+    public String key(String id) {
+        String keyPrefix = indexer.getKeyspaceForEntityClass(Movie.class);
+        return keyPrefix.endsWith(":") ? keyPrefix + id : keyPrefix + ":" + id;
+    }
+
+    /**
+     * @return the ids with no document stored, in their original order. EXISTS calls are
+     * pipelined in batches of {@value #EXISTS_BATCH_SIZE}, one round trip each.
+     */
+    public List<String> missingIds(List<String> ids) {
+        List<String> missing = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += EXISTS_BATCH_SIZE) {
+            List<String> batch = ids.subList(i, Math.min(i + EXISTS_BATCH_SIZE, ids.size()));
+            List<Response<Boolean>> exists = new ArrayList<>(batch.size());
+            try (Pipeline pipeline = jedis.pipelined()) {
+                for (String id : batch) {
+                    exists.add(pipeline.exists(key(id)));
+                }
+                pipeline.sync();
+            }
+            for (int j = 0; j < batch.size(); j++) {
+                if (!exists.get(j).get()) {
+                    missing.add(batch.get(j));
+                }
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Calls the consumer with the id and extract embedding of every stored movie that has one.
+     * Keys are found with SCAN and their embeddings fetched with one pipelined JSON.GET per page.
+     */
+    public void forEachEmbedding(BiConsumer<String, float[]> consumer) {
+        forEachEmbedding(null, consumer);
+    }
+
+    /**
+     * Like {@link #forEachEmbedding(BiConsumer)}, but only for the movies that have nothing at
+     * {@code path} yet.
+     */
+    public void forEachEmbeddingWithout(String path, BiConsumer<String, float[]> consumer) {
+        forEachEmbedding(Path2.of(path), consumer);
+    }
+
+    private void forEachEmbedding(Path2 skipIfPresent, BiConsumer<String, float[]> consumer) {
+        ScanParams scanParams = new ScanParams().match(key("*")).count(SCAN_PAGE_SIZE);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> page = jedis.scan(cursor, scanParams);
+            List<String> keys = page.getResult();
+            List<Response<Object>> embeddings = new ArrayList<>(keys.size());
+            try (Pipeline pipeline = jedis.pipelined()) {
+                for (String key : keys) {
+                    embeddings.add(skipIfPresent == null
+                            ? pipeline.jsonGet(key, EMBEDDING_PATH)
+                            : pipeline.jsonGet(key, EMBEDDING_PATH, skipIfPresent));
+                }
+                pipeline.sync();
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                Object reply = embeddings.get(i).get();
+                // Several paths answer with an object of match arrays keyed by path
+                if (skipIfPresent != null && reply instanceof JSONObject byPath) {
+                    JSONArray present = byPath.optJSONArray(skipIfPresent.toString());
+                    if (present != null && !present.isEmpty()) {
+                        continue;
+                    }
+                    reply = byPath.opt(EMBEDDING_PATH.toString());
+                }
+                float[] embedding = toEmbedding(reply);
+                if (embedding != null) {
+                    String key = keys.get(i);
+                    consumer.accept(key.substring(key.lastIndexOf(':') + 1), embedding);
+                }
+            }
+            cursor = page.getCursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+    }
+
+    /**
+     * Calls the consumer with every stored movie, one SCAN page at a time, each page fetched
+     * with one pipelined JSON.GET.
+     */
+    public void forEachPage(Consumer<List<Movie>> consumer) {
+        ScanParams scanParams = new ScanParams().match(key("*")).count(SCAN_PAGE_SIZE);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> page = jedis.scan(cursor, scanParams);
+            List<Movie> movies = fetch(page.getResult());
+            if (!movies.isEmpty()) {
+                consumer.accept(movies);
+            }
+            cursor = page.getCursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+    }
+
+    /**
+     * Moves documents stored under any other id than {@link #idFor}, such as the ULIDs
+     * {@link MovieRepository#saveAll} assigns, to their title/year id, keeping their embedding.
+     * Without this, a catalog partially loaded under the old ids would be loaded again under the
+     * new ones and every such movie would appear twice in KNN results. Keys are found with SCAN,
+     * and only the ones whose id is not a UUID are read. A document already written under the new
+     * id is kept and the old one just deleted.
+     *
+     * @return the number of documents moved or deleted
+     */
+    public long adoptLegacyIds() {
+        ScanParams scanParams = new ScanParams().match(key("*")).count(SCAN_PAGE_SIZE);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        long adopted = 0;
+        do {
+            ScanResult<String> page = jedis.scan(cursor, scanParams);
+            List<String> legacyKeys = page.getResult().stream()
+                    .filter(key -> !isUuid(key.substring(key.lastIndexOf(':') + 1)))
+                    .toList();
+            if (!legacyKeys.isEmpty()) {
+                adopted += adopt(legacyKeys);
+            }
+            cursor = page.getCursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        return adopted;
+    }
+
+    private long adopt(List<String> legacyKeys) {
+        List<Response<Object>> documents = new ArrayList<>(legacyKeys.size());
+        try (Pipeline pipeline = jedis.pipelined()) {
+            for (String key : legacyKeys) {
+                documents.add(pipeline.jsonGet(key, Path2.ROOT_PATH));
+            }
+            pipeline.sync();
+        }
+        long adopted = 0;
+        try (Pipeline pipeline = jedis.pipelined()) {
+            for (int i = 0; i < legacyKeys.size(); i++) {
+                Movie movie = toMovie(documents.get(i).get());
+                if (movie == null || movie.getTitle() == null) {
+                    continue;
+                }
+                movie.setId(idFor(movie));
+                pipeline.jsonSet(key(movie.getId()), Path2.ROOT_PATH, toJson(movie), JsonSetParams.jsonSetParams().nx());
+                pipeline.unlink(legacyKeys.get(i));
+                adopted++;
+            }
+            pipeline.sync();
+        }
+        return adopted;
+    }
+
+    private static boolean isUuid(String id) {
+        try {
+            UUID.fromString(id);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the stored movies among the ids, in the order of the ids
+     */
+    public List<Movie> findAll(List<String> ids) {
+        return fetch(ids.stream().map(this::key).toList());
+    }
+
+    private List<Movie> fetch(List<String> keys) {
+        List<Response<Object>> documents = new ArrayList<>(keys.size());
+        try (Pipeline pipeline = jedis.pipelined()) {
+            for (String key : keys) {
+                documents.add(pipeline.jsonGet(key, Path2.ROOT_PATH));
+            }
+            pipeline.sync();
+        }
+        List<Movie> movies = new ArrayList<>(keys.size());
+        for (Response<Object> document : documents) {
+            Movie movie = toMovie(document.get());
+            if (movie != null) {
+                movies.add(movie);
+            }
+        }
+        return movies;
+    }
+
+    private Movie toMovie(Object reply) {
+        if (reply instanceof JSONArray matches && matches.optJSONObject(0) != null) {
+            try {
+                return objectMapper.readValue(matches.getJSONObject(0).toString(), Movie.class);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Could not read movie document", e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the stored extract embedding of the movie, empty when it does not exist or has none
+     */
+    public Optional<float[]> embedding(String id) {
+        return Optional.ofNullable(toEmbedding(jedis.jsonGet(key(id), EMBEDDING_PATH)));
+    }
+
+    private static float[] toEmbedding(Object reply) {
+        // JSONPath queries answer with an array of matches
+        if (reply instanceof JSONArray matches && matches.optJSONArray(0) != null) {
+            JSONArray values = matches.getJSONArray(0);
+            float[] embedding = new float[values.length()];
+            for (int j = 0; j < embedding.length; j++) {
+                embedding[j] = values.getFloat(j);
+            }
+            return embedding;
+        }
+        return null;
+    }
+
+    /**
+     * Sets one JSON path of each document to the given value, in a single round trip.
+     */
+    public void setPathAll(String path, Map<String, ?> valuesById) {
+        if (valuesById.isEmpty()) {
+            return;
+        }
+        Path2 jsonPath = Path2.of(path);
+        try (Pipeline pipeline = jedis.pipelined()) {
+            valuesById.forEach((id, value) -> pipeline.jsonSet(key(id), jsonPath, toJson(value)));
+            pipeline.sync();
+        }
+    }
+
+    /**
+     * Writes the batch with one JSON.SET and one FT.SUGADD per movie, all in a single round trip.
+     */
+    public void saveAll(List<Movie> movies) {
+        String suggestionKey = titleSuggestionKey();
+        try (Pipeline pipeline = jedis.pipelined()) {
+            for (Movie movie : movies) {
+                if (movie.getId() == null) {
+                    movie.setId(idFor(movie));
+                }
+                pipeline.jsonSet(key(movie.getId()), Path2.ROOT_PATH, toJson(movie));
+                if (movie.getTitle() != null) {
+                    pipeline.sendCommand(SearchProtocol.SearchCommand.SUGADD, suggestionKey, movie.getTitle(), "1.0");
+                }
+            }
+            pipeline.sync();
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not serialize " + value, e);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.redis.vectorsearch.service;
+
+import com.redis.om.spring.vectorize.Embedder;
+import com.redis.vectorsearch.domain.Movie$;
+import com.redis.vectorsearch.repository.MovieBulkOperations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Binary snapshot of the extract embeddings, so a fresh environment can load vectors
+ * instead of computing them.
+ * <p>
+ * Layout, little-endian: the magic {@code MVEC}, a format version, the dimension, the
+ * number of records, the fingerprint vector, then one fixed-size record per movie: its
+ * UUID id as two longs followed by its embedding. The file is memory-mapped, and
+ * vectors are read from the mapping on demand.
+ * <p>
+ * The fingerprint is the embedding of a fixed probe sentence. A snapshot is only used when
+ * the current model embeds the probe the same way, so vectors from a different model are
+ * never mixed into the index.
+ */
+@Component
+public class EmbeddingSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingSnapshot.class);
+    private static final int MAGIC = 0x4D564543;
+    private static final int VERSION = 1;
+    private static final int HEADER_INTS = 4;
+    private static final int ID_FLOATS = Long.BYTES * 2 / Float.BYTES;
+    private static final String PROBE_TEXT = "A retired detective returns for one last case in a city full of secrets.";
+    private static final double MIN_PROBE_SIMILARITY = 0.999;
+
+    private final Embedder embedder;
+    private final MovieBulkOperations movieBulkOperations;
+    private final Path path;
+
+    public EmbeddingSnapshot(
+            Embedder embedder,
+            MovieBulkOperations movieBulkOperations,
+            @Value("${embeddings.snapshot.path:embeddings.snapshot}") String path
+    ) {
+        this.embedder = embedder;
+        this.movieBulkOperations = movieBulkOperations;
+        this.path = Path.of(path);
+    }
+
+    /**
+     * Read-only view of a snapshot file. A single mapping holds at most 2 GB, so the records
+     * are mapped in segments of {@code recordsPerSegment} records each.
+     */
+    public static final class Vectors {
+
+        private final FloatBuffer[] segments;
+        private final int recordsPerSegment;
+        private final Map<String, Integer> recordById;
+        private final int dimension;
+
+        private Vectors(FloatBuffer[] segments, int recordsPerSegment, Map<String, Integer> recordById, int dimension) {
+            this.segments = segments;
+            this.recordsPerSegment = recordsPerSegment;
+            this.recordById = recordById;
+            this.dimension = dimension;
+        }
+
+        public int size() {
+            return recordById.size();
+        }
+
+        /**
+         * @return the stored embedding, or null when the snapshot has none for this id
+         */
+        public float[] get(String id) {
+            Integer record = recordById.get(id);
+            if (record == null) {
+                return null;
+            }
+            int recordFloats = ID_FLOATS + dimension;
+            float[] vector = new float[dimension];
+            segments[record / recordsPerSegment].get((record % recordsPerSegment) * recordFloats + ID_FLOATS, vector);
+            return vector;
+        }
+    }
+
+    /**
+     * @return the snapshot when the file exists, is complete and was written with the current model
+     */
+    public Optional<Vectors> open() {
+        if (!Files.isRegularFile(path)) {
+            return Optional.empty();
+        }
+        long startTime = System.currentTimeMillis();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = readFully(channel, 0, Math.min(channel.size(), HEADER_INTS * Integer.BYTES));
+            if (header.remaining() < HEADER_INTS * Integer.BYTES || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                logger.warn("Ignoring {}, it is not an embedding snapshot of a supported version", path);
+                return Optional.empty();
+            }
+            int dimension = header.getInt();
+            int count = header.getInt();
+            long recordBytes = (long) (ID_FLOATS + dimension) * Float.BYTES;
+            long recordsStart = HEADER_INTS * Integer.BYTES + (long) dimension * Float.BYTES;
+            if (dimension <= 0 || count < 0 || channel.size() != Math.addExact(recordsStart, Math.multiplyExact(count, recordBytes))) {
+                logger.warn("Ignoring {}, its size does not match the {} vectors of dimension {} in its header",
+                        path, count, dimension);
+                return Optional.empty();
+            }
+            float[] fingerprint = new float[dimension];
+            readFully(channel, HEADER_INTS * Integer.BYTES, (long) dimension * Float.BYTES).asFloatBuffer().get(fingerprint);
+
+            float[] probe = probeEmbedding();
+            if (probe.length != dimension || cosineSimilarity(probe, fingerprint) < MIN_PROBE_SIMILARITY) {
+                logger.warn("Ignoring {}, it was written with a different embedding model", path);
+                return Optional.empty();
+            }
+
+            int recordsPerSegment = (int) (Integer.MAX_VALUE / recordBytes);
+            FloatBuffer[] segments = new FloatBuffer[(count + recordsPerSegment - 1) / recordsPerSegment];
+            Map<String, Integer> recordById = HashMap.newHashMap(count);
+            for (int segment = 0; segment < segments.length; segment++) {
+                int first = segment * recordsPerSegment;
+                int records = Math.min(recordsPerSegment, count - first);
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY,
+                        recordsStart + first * recordBytes, records * recordBytes);
+                mapped.order(ByteOrder.LITTLE_ENDIAN);
+                for (int i = 0; i < records; i++) {
+                    int recordStart = (int) (i * recordBytes);
+                    UUID id = new UUID(mapped.getLong(recordStart), mapped.getLong(recordStart + Long.BYTES));
+                    recordById.put(id.toString(), first + i);
+                }
+                segments[segment] = mapped.asFloatBuffer();
+            }
+            logger.info("Opened embedding snapshot {} with {} vectors in {} ms",
+                    path, count, System.currentTimeMillis() - startTime);
+            return Optional.of(new Vectors(segments, recordsPerSegment, recordById, dimension));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not read embedding snapshot {}", path, e);
+            return Optional.empty();
+        }
+    }
+
+    public boolean exists() {
+        return Files.isRegularFile(path);
+    }
+
+    /**
+     * Writes the embeddings of every stored movie to the snapshot file, replacing it atomically.
+     * Movies whose id is not a UUID are left out.
+     *
+     * @return the number of vectors written
+     */
+    public int export() throws IOException {
+        long startTime = System.currentTimeMillis();
+        float[] fingerprint = probeEmbedding();
+        int dimension = fingerprint.length;
+        Map<UUID, float[]> vectors = new LinkedHashMap<>();
+        movieBulkOperations.forEachEmbedding((id, embedding) -> {
+            if (embedding.length == dimension) {
+                parseUuid(id).ifPresent(uuid -> vectors.put(uuid, embedding));
+            }
+        });
+
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_INTS * Integer.BYTES + dimension * Float.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(vectors.size());
+            header.asFloatBuffer().put(fingerprint);
+            header.position(header.limit()).flip();
+            writeFully(channel, header);
+
+            ByteBuffer record = ByteBuffer.allocate(Long.BYTES * 2 + dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (Map.Entry<UUID, float[]> entry : vectors.entrySet()) {
+                record.clear();
+                record.putLong(entry.getKey().getMostSignificantBits()).putLong(entry.getKey().getLeastSignificantBits());
+                for (float value : entry.getValue()) {
+                    record.putFloat(value);
+                }
+                record.flip();
+                writeFully(channel, record);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        logger.info("Exported {} embeddings to {} in {} ms", vectors.size(), path, System.currentTimeMillis() - startTime);
+        return vectors.size();
+    }
+
+    private float[] probeEmbedding() {
+        return embedder.getTextEmbeddingsAsFloats(List.of(PROBE_TEXT), Movie$.EXTRACT).getFirst();
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(size)).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static Optional<UUID> parseUuid(String id) {
+        try {
+            return Optional.of(UUID.fromString(id));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static double cosineSimilarity(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0 || normB == 0 ? 0 : dot / Math.sqrt(normA * normB);
+    }
+}
@@ -1,45 +1,211 @@
 package com.redis.vectorsearch.service;
 
-import com.redis.vectorsearch.repository.MovieRepository;
+import com.redis.om.spring.indexing.RediSearchIndexer;
+import com.redis.vectorsearch.domain.Movie;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.search.Query;
 
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Readiness of the movie embeddings, kept in memory so request handlers never go to Redis
+ * to find out whether they can serve.
+ * <p>
+ * While the loader runs, it reports every batch it writes and the count is only advanced
+ * in memory. Otherwise the count is re-read with FT.SEARCH on a slow schedule, which picks up
+ * data loaded or flushed by someone else. Progress changes are pushed to subscribed
+ * server-sent event streams.
+ */
 @Service
 public class EmbeddingStatusService {
 
     private static final Logger logger = LoggerFactory.getLogger(EmbeddingStatusService.class);
-    private final MovieRepository movieRepository;
 
-    public EmbeddingStatusService(MovieRepository movieRepository) {
-        this.movieRepository = movieRepository;
+    public enum Phase {
+        /** Not counted yet. */
+        STARTING,
+        /** The loader is writing movies. */
+        LOADING,
+        /** The index is being built or rebuilt over the stored movies. */
+        INDEXING,
+        /** At least the expected number of movies is stored and searchable. */
+        READY,
+        /** Fewer movies than expected are stored and no load is running. */
+        INCOMPLETE
+    }
+
+    private final JedisPooled jedis;
+    private final RediSearchIndexer indexer;
+    private final long expectedDocuments;
+    private final AtomicLong embeddedDocuments = new AtomicLong();
+    private final List<SseEmitter> subscribers = new CopyOnWriteArrayList<>();
+    private volatile Phase phase = Phase.STARTING;
+
+    public EmbeddingStatusService(
+            JedisPooled jedis,
+            RediSearchIndexer indexer,
+            @Value("${embeddings.status.expected-documents:10000}") long expectedDocuments
+    ) {
+        this.jedis = jedis;
+        this.indexer = indexer;
+        this.expectedDocuments = expectedDocuments;
     }
 
     /**
-     * Checks if the embeddings are ready by verifying that there are at least 10,000 documents in the repository.
-     * @return true if the embeddings are ready, false otherwise
+     * @return true once the expected number of movies is stored and indexed, from memory
      */
     public boolean areEmbeddingsReady() {
+        return phase == Phase.READY;
+    }
+
+    /**
+     * @return the number of stored movies as last counted or reported by the loader
+     */
+    public long getTotalDocNum() {
+        return embeddedDocuments.get();
+    }
+
+    public long getExpectedDocNum() {
+        return expectedDocuments;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public Map<String, Object> status() {
+        long embedded = embeddedDocuments.get();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("phase", phase);
+        status.put("ready", phase == Phase.READY);
+        status.put("embedded", embedded);
+        status.put("expected", expectedDocuments);
+        status.put("percent", expectedDocuments == 0 ? 100 : Math.min(100, embedded * 100 / expectedDocuments));
+        return status;
+    }
+
+    /**
+     * Counts the indexed movies with FT.SEARCH and updates the readiness accordingly. Skipped
+     * while a load or index build is in progress, since those report their own progress.
+     *
+     * @return whether the embeddings are ready
+     */
+    public synchronized boolean refresh() {
+        if (phase == Phase.LOADING || phase == Phase.INDEXING) {
+            return false;
+        }
         try {
-            long embeddedDocs = movieRepository.count();
-            logger.info("Number of embedded documents: {}", embeddedDocs);
-            return embeddedDocs >= 10000;
+            long embedded = countDocuments();
+            embeddedDocuments.set(embedded);
+            update(embedded >= expectedDocuments ? Phase.READY : Phase.INCOMPLETE);
         } catch (Exception e) {
             logger.error("Error checking embedding status", e);
-            return false;
         }
+        return phase == Phase.READY;
+    }
+
+    @Scheduled(
+            initialDelayString = "${embeddings.status.refresh-interval-ms:30000}",
+            fixedDelayString = "${embeddings.status.refresh-interval-ms:30000}"
+    )
+    public void scheduledRefresh() {
+        refresh();
     }
 
     /**
-     * Gets the total number of documents in the repository.
-     * @return the number of documents
+     * Called by the loader before it writes anything, starting from the movies already stored.
      */
-    public long getTotalDocNum() {
+    public synchronized void loadingStarted() {
         try {
-            return movieRepository.count();
+            embeddedDocuments.set(countDocuments());
         } catch (Exception e) {
             logger.error("Error getting total document count", e);
-            return 0;
         }
+        update(Phase.LOADING);
+    }
+
+    /**
+     * Called by the loader after each batch it writes.
+     */
+    public void recordSaved(int documents) {
+        embeddedDocuments.addAndGet(documents);
+        publish();
+    }
+
+    /**
+     * Called while the index is built over the stored movies, when searches cannot be served.
+     */
+    public synchronized void indexingStarted() {
+        update(Phase.INDEXING);
+    }
+
+    /**
+     * Ends a load or an index build by counting what is actually indexed.
+     */
+    public synchronized boolean finished() {
+        phase = Phase.STARTING;
+        return refresh();
+    }
+
+    /**
+     * Streams the status now and after every change, completing once the embeddings are ready.
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(0L);
+        emitter.onCompletion(() -> subscribers.remove(emitter));
+        emitter.onTimeout(() -> subscribers.remove(emitter));
+        emitter.onError(e -> subscribers.remove(emitter));
+        subscribers.add(emitter);
+        send(emitter, status());
+        return emitter;
+    }
+
+    private void update(Phase newPhase) {
+        Phase previous = phase;
+        phase = newPhase;
+        if (previous != newPhase) {
+            logger.info("Embedding status {} with {} of {} documents", newPhase, embeddedDocuments.get(), expectedDocuments);
+        }
+        publish();
+    }
+
+    private void publish() {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        Map<String, Object> status = status();
+        for (SseEmitter emitter : subscribers) {
+            send(emitter, status);
+        }
+    }
+
+    private void send(SseEmitter emitter, Map<String, Object> status) {
+        try {
+            emitter.send(SseEmitter.event().name("status").data(status));
+            if (Boolean.TRUE.equals(status.get("ready"))) {
+                emitter.complete();
+                subscribers.remove(emitter);
+            }
+        } catch (IOException | IllegalStateException e) {
+            subscribers.remove(emitter);
+        }
+    }
+
+    /**
+     * FT.SEARCH with LIMIT 0 0 only returns the number of matches, no document is loaded.
+     */
+    private long countDocuments() {
+        return jedis.ftSearch(indexer.getIndexName(Movie.class), new Query("*").limit(0, 0)).getTotalResults();
     }
-}
\ No newline at end of file
+}
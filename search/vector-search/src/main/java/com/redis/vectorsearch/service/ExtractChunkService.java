@@ -0,0 +1,443 @@
+package com.redis.vectorsearch.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redis.om.spring.indexing.RediSearchIndexer;
+import com.redis.om.spring.tuple.Pair;
+import com.redis.om.spring.tuple.Tuples;
+import com.redis.vectorsearch.domain.Movie;
+import com.redis.vectorsearch.repository.MovieBulkOperations;
+import org.json.JSONArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.json.Path2;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+import redis.clients.jedis.search.Document;
+import redis.clients.jedis.search.FTCreateParams;
+import redis.clients.jedis.search.IndexDataType;
+import redis.clients.jedis.search.Query;
+import redis.clients.jedis.search.SearchResult;
+import redis.clients.jedis.search.schemafields.NumericField;
+import redis.clients.jedis.search.schemafields.TagField;
+import redis.clients.jedis.search.schemafields.TextField;
+import redis.clients.jedis.search.schemafields.VectorField;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional passage-level vectors for long extracts, which the sentence model otherwise
+ * truncates to their first few hundred tokens.
+ * <p>
+ * Each extract is split into overlapping windows of at most {@code max-words} words, and each
+ * window is stored as its own JSON document under {@value #KEY_PREFIX} with its embedding, the
+ * id of its movie, and the movie's title, year, cast and genres so the usual filters apply.
+ * A KNN search over the passages is grouped by movie, scoring each movie by its best passage
+ * or by the sum over its passages, until k distinct movies are found.
+ * <p>
+ * Passages are written after loading for the movies that have none yet or whose extract
+ * changed since, after deleting their previous passages. Pages of movies are embedded and
+ * written by a pool of workers, one model call per batch and one pipeline per page; the
+ * passage index is created once they are all written. Passages of movies that no longer exist
+ * are deleted at the same time.
+ */
+@Service
+public class ExtractChunkService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExtractChunkService.class);
+    private static final String KEY_PREFIX = "MovieChunk:";
+    private static final String VECTOR_FIELD = "embedding";
+    private static final String SCORE_FIELD = "__embedding_score";
+    private static final int MAX_CANDIDATE_ROUNDS = 4;
+
+    public enum Aggregation {
+        /** A movie scores as its most similar passage. */
+        MAX,
+        /** A movie scores as the sum of the similarities of its passages among the candidates. */
+        SUM
+    }
+
+    private final JedisPooled jedis;
+    private final String indexName;
+    private final ExtractEmbedder extractEmbedder;
+    private final MovieBulkOperations movieBulkOperations;
+    private final VectorIndexService vectorIndexService;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final int maxWords;
+    private final int overlapWords;
+    private final Aggregation aggregation;
+    private final int candidatesPerResult;
+    private final int batchSize;
+    private final int workers;
+
+    public ExtractChunkService(
+            JedisPooled jedis,
+            RediSearchIndexer indexer,
+            ExtractEmbedder extractEmbedder,
+            MovieBulkOperations movieBulkOperations,
+            VectorIndexService vectorIndexService,
+            ObjectMapper objectMapper,
+            @Value("${vectors.chunks.enabled:false}") boolean enabled,
+            @Value("${vectors.chunks.max-words:100}") int maxWords,
+            @Value("${vectors.chunks.overlap-words:20}") int overlapWords,
+            @Value("${vectors.chunks.aggregation:MAX}") Aggregation aggregation,
+            @Value("${vectors.chunks.candidates-per-result:4}") int candidatesPerResult,
+            @Value("${vectors.chunks.batch-size:500}") int batchSize,
+            @Value("${vectors.chunks.workers:0}") int workers
+    ) {
+        if (overlapWords >= maxWords) {
+            throw new IllegalArgumentException("vectors.chunks.overlap-words must be smaller than vectors.chunks.max-words");
+        }
+        this.jedis = jedis;
+        this.indexName = chunkIndexName(indexer.getIndexName(Movie.class));
+        this.extractEmbedder = extractEmbedder;
+        this.movieBulkOperations = movieBulkOperations;
+        this.vectorIndexService = vectorIndexService;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.maxWords = maxWords;
+        this.overlapWords = overlapWords;
+        this.aggregation = aggregation;
+        this.candidatesPerResult = candidatesPerResult;
+        this.batchSize = batchSize;
+        this.workers = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Aggregation aggregation() {
+        return aggregation;
+    }
+
+    public String indexName() {
+        return indexName;
+    }
+
+    /**
+     * Splits the text into windows of at most {@code maxWords} words, each starting
+     * {@code maxWords - overlapWords} words after the previous one.
+     */
+    public static List<String> chunk(String text, int maxWords, int overlapWords) {
+        String[] words = text.trim().split("\\s+");
+        if (words.length <= maxWords) {
+            return List.of(text.trim());
+        }
+        List<String> chunks = new ArrayList<>();
+        int step = maxWords - overlapWords;
+        for (int start = 0; start < words.length; start += step) {
+            int end = Math.min(words.length, start + maxWords);
+            chunks.add(String.join(" ", Arrays.asList(words).subList(start, end)));
+            if (end == words.length) {
+                break;
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Writes the passages of every stored movie that has none yet or whose extract changed,
+     * deletes the passages of movies that no longer exist, then makes sure the passage index
+     * exists and has indexed them.
+     */
+    public void indexMissingChunks() throws InterruptedException {
+        long startTime = System.currentTimeMillis();
+        AtomicLong movies = new AtomicLong();
+        AtomicLong chunks = new AtomicLong();
+        // The caller runs the page itself when every worker is busy, which bounds the pages in memory
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workers), new ThreadPoolExecutor.CallerRunsPolicy());
+        List<CompletableFuture<Void>> pages = Collections.synchronizedList(new ArrayList<>());
+        try {
+            movieBulkOperations.forEachPage(page -> {
+                List<Movie> missing = withoutCurrentChunks(page);
+                if (!missing.isEmpty()) {
+                    pages.add(CompletableFuture.runAsync(() -> {
+                        chunks.addAndGet(embedAndSave(missing));
+                        movies.addAndGet(missing.size());
+                    }, executor));
+                }
+            });
+            CompletableFuture.allOf(pages.toArray(CompletableFuture[]::new)).join();
+        } finally {
+            executor.shutdown();
+        }
+        long orphans = deleteOrphanedChunks();
+        long writeMillis = System.currentTimeMillis() - startTime;
+
+        createIndexIfMissing();
+        vectorIndexService.awaitIndexing(indexName);
+        logger.info("Wrote {} passages for {} movies in {} ms with {} workers, deleted those of {} removed movies, {} indexed in {} ms",
+                chunks.get(), movies.get(), writeMillis, workers, orphans, indexName, System.currentTimeMillis() - startTime - writeMillis);
+    }
+
+    /**
+     * Nearest movies by their passages. Fetches {@code candidates-per-result} times k passages,
+     * and more while they come from fewer than k distinct movies.
+     *
+     * @return movies with their aggregated cosine similarity, most similar first
+     */
+    public List<Pair<Movie, Double>> knn(String filterQuery, float[] queryVector, int k) {
+        byte[] blob = VectorPrecision.FLOAT32.toBlob(queryVector, 1);
+        Map<String, Double> scoreByMovie = new HashMap<>();
+        int candidates = k * candidatesPerResult;
+        for (int round = 0; round < MAX_CANDIDATE_ROUNDS; round++) {
+            Query query = new Query("(" + filterQuery + ")=>[KNN $k @" + VECTOR_FIELD + " $vector AS " + SCORE_FIELD + "]")
+                    .addParam("k", candidates)
+                    .addParam("vector", blob)
+                    .setSortBy(SCORE_FIELD, true)
+                    .returnFields("movieId", SCORE_FIELD)
+                    .limit(0, candidates)
+                    .dialect(2);
+            SearchResult result = jedis.ftSearch(indexName, query);
+            scoreByMovie.clear();
+            for (Document document : result.getDocuments()) {
+                double similarity = 1 - Double.parseDouble(document.getString(SCORE_FIELD));
+                scoreByMovie.merge(document.getString("movieId"), similarity,
+                        aggregation == Aggregation.MAX ? Math::max : Double::sum);
+            }
+            if (scoreByMovie.size() >= k || result.getDocuments().size() < candidates) {
+                break;
+            }
+            candidates *= 2;
+        }
+
+        List<String> ids = scoreByMovie.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .limit(k)
+                .map(Map.Entry::getKey)
+                .toList();
+        List<Pair<Movie, Double>> matches = new ArrayList<>(ids.size());
+        for (Movie movie : movieBulkOperations.findAll(ids)) {
+            matches.add(Tuples.of(movie, scoreByMovie.get(movie.getId())));
+        }
+        return matches;
+    }
+
+    /**
+     * Deletes every passage of the given movies. Each movie's first passage records how many
+     * it has, so this takes two pipelined round trips whatever the number of movies.
+     */
+    public void deleteChunks(Collection<String> movieIds) {
+        List<String> ids = List.copyOf(movieIds);
+        List<Response<Object>> counts = new ArrayList<>(ids.size());
+        try (Pipeline pipeline = jedis.pipelined()) {
+            for (String id : ids) {
+                counts.add(pipeline.jsonGet(key(id, 0), Path2.of("$.chunks")));
+            }
+            pipeline.sync();
+        }
+        List<String> uncounted = new ArrayList<>();
+        try (Pipeline pipeline = jedis.pipelined()) {
+            for (int i = 0; i < ids.size(); i++) {
+                int count = firstInt(counts.get(i).get());
+                if (count == 0) {
+                    uncounted.add(ids.get(i));
+                }
+                for (int position = 0; position < count; position++) {
+                    pipeline.del(key(ids.get(i), position));
+                }
+            }
+            pipeline.sync();
+        }
+        // Passages written before the count was recorded are deleted until one is missing
+        for (String id : uncounted) {
+            int position = 0;
+            while (jedis.del(key(id, position)) > 0) {
+                position++;
+            }
+        }
+    }
+
+    /**
+     * @return the movies of the page with an extract and either no passages stored yet, or
+     * passages written for a different extract
+     */
+    private List<Movie> withoutCurrentChunks(List<Movie> page) {
+        List<Movie> withExtract = page.stream().filter(movie -> movie.getExtract() != null && !movie.getExtract().isBlank()).toList();
+        List<Response<Object>> hashes = new ArrayList<>(withExtract.size());
+        try (Pipeline pipeline = jedis.pipelined()) {
+            for (Movie movie : withExtract) {
+                hashes.add(pipeline.jsonGet(key(movie.getId(), 0), Path2.of("$.extractHash")));
+            }
+            pipeline.sync();
+        }
+        List<Movie> missing = new ArrayList<>();
+        List<String> stale = new ArrayList<>();
+        for (int i = 0; i < withExtract.size(); i++) {
+            Movie movie = withExtract.get(i);
+            Object hash = hashes.get(i).get();
+            if (hash == null || !sha256(movie.getExtract()).equals(firstString(hash))) {
+                missing.add(movie);
+                if (hash != null) {
+                    stale.add(movie.getId());
+                }
+            }
+        }
+        if (!stale.isEmpty()) {
+            deleteChunks(stale);
+        }
+        return missing;
+    }
+
+    /**
+     * Scans the first passage of every movie and deletes the passages of movies that are no
+     * longer stored.
+     *
+     * @return the number of movies whose passages were deleted
+     */
+    private long deleteOrphanedChunks() {
+        long deleted = 0;
+        ScanParams params = new ScanParams().match(KEY_PREFIX + "*:0").count(batchSize);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> page = jedis.scan(cursor, params);
+            List<String> movieIds = page.getResult().stream()
+                    .map(key -> key.substring(KEY_PREFIX.length(), key.length() - ":0".length()))
+                    .toList();
+            List<String> removed = movieIds.isEmpty() ? List.of() : movieBulkOperations.missingIds(movieIds);
+            if (!removed.isEmpty()) {
+                deleteChunks(removed);
+                deleted += removed.size();
+            }
+            cursor = page.getCursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        return deleted;
+    }
+
+    /**
+     * @return the number of passages written
+     */
+    private int embedAndSave(List<Movie> movies) {
+        List<Movie> owners = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        Map<String, Integer> chunkCounts = new HashMap<>();
+        for (Movie movie : movies) {
+            List<String> chunks = chunk(movie.getExtract(), maxWords, overlapWords);
+            chunkCounts.put(movie.getId(), chunks.size());
+            for (int position = 0; position < chunks.size(); position++) {
+                owners.add(movie);
+                positions.add(position);
+                texts.add(chunks.get(position));
+            }
+        }
+
+        List<float[]> embeddings = new ArrayList<>(texts.size());
+        try {
+            for (int start = 0; start < texts.size(); start += batchSize) {
+                embeddings.addAll(extractEmbedder.embed(texts.subList(start, Math.min(texts.size(), start + batchSize))));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while embedding passages", e);
+        }
+
+        try (Pipeline pipeline = jedis.pipelined()) {
+            for (int i = 0; i < texts.size(); i++) {
+                Movie movie = owners.get(i);
+                Map<String, Object> chunk = new LinkedHashMap<>();
+                chunk.put("movieId", movie.getId());
+                chunk.put("position", positions.get(i));
+                chunk.put("chunks", chunkCounts.get(movie.getId()));
+                chunk.put("extractHash", sha256(movie.getExtract()));
+                chunk.put("text", texts.get(i));
+                chunk.put("title", movie.getTitle());
+                chunk.put("year", movie.getYear());
+                chunk.put("cast", movie.getCast() == null ? List.of() : movie.getCast());
+                chunk.put("genres", movie.getGenres() == null ? List.of() : movie.getGenres());
+                chunk.put(VECTOR_FIELD, embeddings.get(i));
+                pipeline.jsonSet(key(movie.getId(), positions.get(i)), Path2.ROOT_PATH, toJson(chunk));
+            }
+            pipeline.sync();
+        }
+        return texts.size();
+    }
+
+    private void createIndexIfMissing() {
+        try {
+            jedis.ftInfo(indexName);
+            return;
+        } catch (JedisDataException e) {
+            // No such index yet
+        }
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        attributes.put("TYPE", "FLOAT32");
+        attributes.put("DIM", VectorIndexService.DIMENSION);
+        attributes.put("DISTANCE_METRIC", "COSINE");
+        jedis.ftCreate(indexName, FTCreateParams.createParams().on(IndexDataType.JSON).prefix(KEY_PREFIX), List.of(
+                TagField.of("$.movieId").as("movieId"),
+                TextField.of("$.title").as("title"),
+                NumericField.of("$.year").as("year"),
+                TagField.of("$.cast[*]").as("cast"),
+                TagField.of("$.genres[*]").as("genres"),
+                new VectorField("$." + VECTOR_FIELD, VectorField.VectorAlgorithm.HNSW, attributes).as(VECTOR_FIELD)
+        ));
+    }
+
+    /**
+     * Names the passage index after the movie index, as it would be for a MovieChunk entity.
+     */
+    private static String chunkIndexName(String movieIndexName) {
+        return movieIndexName.endsWith("Idx")
+                ? movieIndexName.substring(0, movieIndexName.length() - "Idx".length()) + "ChunkIdx"
+                : movieIndexName + "Chunk";
+    }
+
+    /**
+     * @return the first value of a JSON.GET reply for a JSONPath, or 0 when there is none
+     */
+    private static int firstInt(Object reply) {
+        if (reply instanceof JSONArray values && !values.isEmpty()) {
+            return values.getInt(0);
+        }
+        return 0;
+    }
+
+    /**
+     * @return the first value of a JSON.GET reply for a JSONPath as a string, or null when there is none
+     */
+    private static String firstString(Object reply) {
+        if (reply instanceof JSONArray values && !values.isEmpty()) {
+            return String.valueOf(values.get(0));
+        }
+        return null;
+    }
+
+    private static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String key(String movieId, int position) {
+        return KEY_PREFIX + movieId + ":" + position;
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not serialize " + value, e);
+        }
+    }
+}
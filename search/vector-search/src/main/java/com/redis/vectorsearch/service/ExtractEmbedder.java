@@ -0,0 +1,55 @@
+package com.redis.vectorsearch.service;
+
+import com.redis.om.spring.vectorize.Embedder;
+import com.redis.vectorsearch.domain.Movie$;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Entry point to the embedding model for the bulk paths, which call it from several worker
+ * threads.
+ * <p>
+ * Redis OM Spring's {@link Embedder} makes no promise that its model may be called
+ * concurrently, so at most {@code embeddings.max-concurrent-calls} calls run at a time, one by
+ * default. Inference already uses several cores within a call, and the workers still overlap
+ * embedding with parsing and writing. Raise the limit only for an embedder known to be
+ * thread-safe.
+ */
+@Component
+public class ExtractEmbedder {
+
+    private final Embedder embedder;
+    private final int maxConcurrentCalls;
+    private final Semaphore calls;
+
+    public ExtractEmbedder(
+            Embedder embedder,
+            @Value("${embeddings.max-concurrent-calls:1}") int maxConcurrentCalls
+    ) {
+        if (maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("embeddings.max-concurrent-calls must be at least 1");
+        }
+        this.embedder = embedder;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.calls = new Semaphore(maxConcurrentCalls);
+    }
+
+    public int maxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    /**
+     * @return one embedding per text, in the same order
+     */
+    public List<float[]> embed(List<String> texts) throws InterruptedException {
+        calls.acquire();
+        try {
+            return embedder.getTextEmbeddingsAsFloats(texts, Movie$.EXTRACT);
+        } finally {
+            calls.release();
+        }
+    }
+}
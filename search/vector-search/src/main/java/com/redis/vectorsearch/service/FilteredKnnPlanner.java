@@ -0,0 +1,87 @@
+package com.redis.vectorsearch.service;
+
+import com.redis.om.spring.tuple.Pair;
+import com.redis.vectorsearch.domain.Movie;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Picks how to run a KNN query restricted by filters.
+ * <p>
+ * The filter alone is counted first with FT.SEARCH LIMIT 0 0, which only walks the tag and
+ * numeric indexes. When few movies match, scoring each of them against the query vector is
+ * both exact and faster than searching the HNSW graph for the few nodes that pass the filter.
+ * Otherwise the graph is searched, and if it comes back with fewer than k hits although
+ * enough movies match, the query is repeated by brute force so exactly min(k, matches)
+ * movies are always returned.
+ */
+@Service
+public class FilteredKnnPlanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(FilteredKnnPlanner.class);
+
+    public enum Strategy {
+        /** The filter matches nothing, so Redis is not queried for vectors. */
+        EMPTY,
+        /** Every matching movie is scored against the query vector. */
+        BRUTE_FORCE,
+        /** The HNSW graph is searched with the filter applied during traversal. */
+        HNSW,
+        /** HNSW returned too few hits and the query was repeated by brute force. */
+        HNSW_THEN_BRUTE_FORCE
+    }
+
+    public record Result(List<Pair<Movie, Double>> matches, Strategy strategy, long filterMatches) {
+    }
+
+    private final VectorIndexService vectorIndexService;
+    private final long bruteForceMaxMatches;
+
+    public FilteredKnnPlanner(
+            VectorIndexService vectorIndexService,
+            @Value("${vectors.filtered-knn.brute-force-max-matches:2000}") long bruteForceMaxMatches
+    ) {
+        this.vectorIndexService = vectorIndexService;
+        this.bruteForceMaxMatches = bruteForceMaxMatches;
+    }
+
+    public Result knn(String filterQuery, float[] queryVector, int k) {
+        long filterMatches = vectorIndexService.count(filterQuery);
+        Strategy strategy = plan(filterMatches);
+        Result result = switch (strategy) {
+            case EMPTY -> new Result(List.of(), Strategy.EMPTY, 0);
+            case BRUTE_FORCE -> new Result(vectorIndexService.knn(filterQuery, queryVector, k, true), Strategy.BRUTE_FORCE, filterMatches);
+            default -> {
+                List<Pair<Movie, Double>> matches = vectorIndexService.knn(filterQuery, queryVector, k, false);
+                yield needsBruteForce(matches.size(), k, filterMatches)
+                        ? new Result(vectorIndexService.knn(filterQuery, queryVector, k, true), Strategy.HNSW_THEN_BRUTE_FORCE, filterMatches)
+                        : new Result(matches, Strategy.HNSW, filterMatches);
+            }
+        };
+        logger.info("Filtered KNN for k={} over {} matching movies ran as {}", k, filterMatches, result.strategy());
+        return result;
+    }
+
+    /**
+     * The first strategy to try for a filter matching the given number of movies, for callers
+     * that count and search themselves, such as pipelined batches.
+     */
+    public Strategy plan(long filterMatches) {
+        if (filterMatches == 0) {
+            return Strategy.EMPTY;
+        }
+        return filterMatches <= bruteForceMaxMatches ? Strategy.BRUTE_FORCE : Strategy.HNSW;
+    }
+
+    /**
+     * @return whether an HNSW search that returned the given number of hits has to be repeated
+     * by brute force
+     */
+    public boolean needsBruteForce(int hits, int k, long filterMatches) {
+        return hits < Math.min(k, filterMatches);
+    }
+}
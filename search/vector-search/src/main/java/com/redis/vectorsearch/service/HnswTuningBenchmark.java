@@ -0,0 +1,232 @@
+package com.redis.vectorsearch.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redis.om.spring.indexing.RediSearchIndexer;
+import com.redis.vectorsearch.domain.Movie;
+import com.redis.vectorsearch.repository.MovieBulkOperations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.search.Document;
+import redis.clients.jedis.search.FTCreateParams;
+import redis.clients.jedis.search.IndexDataType;
+import redis.clients.jedis.search.Query;
+import redis.clients.jedis.search.schemafields.VectorField;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Benchmark mode for choosing HNSW parameters on the stored embeddings.
+ * <p>
+ * Builds one scratch index per combination of M and EF_CONSTRUCTION over the movie documents,
+ * next to a FLAT index whose exact answers are the baseline. Every sampled query then runs
+ * against each HNSW index once per EF_RUNTIME value, and the report gives recall@k,
+ * p50/p99 latency, build time and FT.INFO vector index memory per combination. Scratch
+ * indexes are dropped afterwards; the documents are never touched.
+ */
+@Service
+public class HnswTuningBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(HnswTuningBenchmark.class);
+    private static final long SAMPLE_SEED = 42;
+    private static final String SCORE_FIELD = "score";
+
+    private final JedisPooled jedis;
+    private final RediSearchIndexer indexer;
+    private final MovieBulkOperations movieBulkOperations;
+    private final VectorIndexService vectorIndexService;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final List<Integer> mValues;
+    private final List<Integer> efConstructionValues;
+    private final List<Integer> efRuntimeValues;
+    private final int k;
+    private final int queries;
+    private final Path output;
+
+    public HnswTuningBenchmark(
+            JedisPooled jedis,
+            RediSearchIndexer indexer,
+            MovieBulkOperations movieBulkOperations,
+            VectorIndexService vectorIndexService,
+            ObjectMapper objectMapper,
+            @Value("${vectors.benchmark.hnsw.enabled:false}") boolean enabled,
+            @Value("${vectors.benchmark.hnsw.m:8,16,32}") List<Integer> mValues,
+            @Value("${vectors.benchmark.hnsw.ef-construction:100,200}") List<Integer> efConstructionValues,
+            @Value("${vectors.benchmark.hnsw.ef-runtime:10,50,100}") List<Integer> efRuntimeValues,
+            @Value("${vectors.benchmark.hnsw.k:10}") int k,
+            @Value("${vectors.benchmark.hnsw.queries:200}") int queries,
+            @Value("${vectors.benchmark.hnsw.output:hnsw-benchmark.json}") String output
+    ) {
+        this.jedis = jedis;
+        this.indexer = indexer;
+        this.movieBulkOperations = movieBulkOperations;
+        this.vectorIndexService = vectorIndexService;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.mValues = mValues;
+        this.efConstructionValues = efConstructionValues;
+        this.efRuntimeValues = efRuntimeValues;
+        this.k = k;
+        this.queries = queries;
+        this.output = Path.of(output);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public List<Map<String, Object>> run() throws InterruptedException, IOException {
+        List<float[]> vectors = new ArrayList<>();
+        movieBulkOperations.forEachEmbedding((id, embedding) -> vectors.add(embedding));
+        if (vectors.isEmpty()) {
+            throw new IllegalStateException("No embeddings stored yet, load movies before benchmarking");
+        }
+        Collections.shuffle(vectors, new Random(SAMPLE_SEED));
+        List<byte[]> queryBlobs = vectors.subList(0, Math.min(queries, vectors.size())).stream()
+                .map(vector -> VectorPrecision.FLOAT32.toBlob(vector, 1))
+                .toList();
+        logger.info("Benchmarking HNSW on {} vectors with {} queries, k={}", vectors.size(), queryBlobs.size(), k);
+
+        String flatIndex = scratchIndexName("flat");
+        List<Map<String, Object>> results = new ArrayList<>();
+        try {
+            createIndex(flatIndex, VectorField.VectorAlgorithm.FLAT, Map.of(), vectors.size());
+            List<Set<String>> exact = new ArrayList<>();
+            for (byte[] blob : queryBlobs) {
+                exact.add(new HashSet<>(knn(flatIndex, blob, null)));
+            }
+
+            for (int m : mValues) {
+                for (int efConstruction : efConstructionValues) {
+                    String hnswIndex = scratchIndexName("m" + m + "-efc" + efConstruction);
+                    try {
+                        long buildMillis = createIndex(hnswIndex, VectorField.VectorAlgorithm.HNSW,
+                                Map.of("M", m, "EF_CONSTRUCTION", efConstruction), vectors.size());
+                        double indexMb = vectorIndexSizeMb(hnswIndex);
+                        for (int efRuntime : efRuntimeValues) {
+                            results.add(measure(hnswIndex, queryBlobs, exact, m, efConstruction, efRuntime, buildMillis, indexMb));
+                        }
+                    } finally {
+                        dropIfExists(hnswIndex);
+                    }
+                }
+            }
+        } finally {
+            dropIfExists(flatIndex);
+        }
+
+        logger.info(String.format("%5s %8s %8s %9s %9s %9s %10s %10s", "M", "EF_CONS", "EF_RUN",
+                "recall@" + k, "p50 ms", "p99 ms", "build ms", "index MB"));
+        for (Map<String, Object> result : results) {
+            logger.info(String.format("%5d %8d %8d %9.4f %9.3f %9.3f %10d %10.2f",
+                    result.get("m"), result.get("efConstruction"), result.get("efRuntime"), result.get("recallAtK"),
+                    result.get("p50Millis"), result.get("p99Millis"), result.get("buildMillis"), result.get("vectorIndexSizeMb")));
+        }
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(output.toFile(), results);
+        logger.info("Wrote HNSW benchmark results to {}", output.toAbsolutePath());
+        return results;
+    }
+
+    private Map<String, Object> measure(
+            String indexName,
+            List<byte[]> queryBlobs,
+            List<Set<String>> exact,
+            int m,
+            int efConstruction,
+            int efRuntime,
+            long buildMillis,
+            double indexMb
+    ) {
+        long[] latencies = new long[queryBlobs.size()];
+        double recall = 0;
+        for (int i = 0; i < queryBlobs.size(); i++) {
+            long startTime = System.nanoTime();
+            List<String> found = knn(indexName, queryBlobs.get(i), efRuntime);
+            latencies[i] = System.nanoTime() - startTime;
+            recall += found.stream().filter(exact.get(i)::contains).count() / (double) Math.max(1, exact.get(i).size());
+        }
+        Arrays.sort(latencies);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("m", m);
+        result.put("efConstruction", efConstruction);
+        result.put("efRuntime", efRuntime);
+        result.put("recallAtK", recall / queryBlobs.size());
+        result.put("p50Millis", percentile(latencies, 0.50) / 1_000_000.0);
+        result.put("p99Millis", percentile(latencies, 0.99) / 1_000_000.0);
+        result.put("buildMillis", buildMillis);
+        result.put("vectorIndexSizeMb", indexMb);
+        return result;
+    }
+
+    /**
+     * @return the keys of the k nearest documents
+     */
+    private List<String> knn(String indexName, byte[] blob, Integer efRuntime) {
+        String knn = "*=>[KNN $k @embeddedExtract $vector" + (efRuntime == null ? "" : " EF_RUNTIME $ef") + " AS " + SCORE_FIELD + "]";
+        Query query = new Query(knn)
+                .addParam("k", k)
+                .addParam("vector", blob)
+                .setSortBy(SCORE_FIELD, true)
+                .setNoContent()
+                .limit(0, k)
+                .dialect(2);
+        if (efRuntime != null) {
+            query.addParam("ef", efRuntime);
+        }
+        return jedis.ftSearch(indexName, query).getDocuments().stream().map(Document::getId).toList();
+    }
+
+    /**
+     * Creates an index holding only the vector field and waits until it has indexed every document.
+     *
+     * @return the build time in milliseconds
+     */
+    private long createIndex(String indexName, VectorField.VectorAlgorithm algorithm, Map<String, Object> parameters, int size)
+            throws InterruptedException {
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        attributes.put("TYPE", "FLOAT32");
+        attributes.put("DIM", VectorIndexService.DIMENSION);
+        attributes.put("DISTANCE_METRIC", "COSINE");
+        attributes.put("INITIAL_CAP", size);
+        attributes.putAll(parameters);
+
+        // Left over if an earlier run was interrupted
+        dropIfExists(indexName);
+        long startTime = System.currentTimeMillis();
+        jedis.ftCreate(indexName, FTCreateParams.createParams()
+                        .on(IndexDataType.JSON)
+                        .prefix(indexer.getKeyspaceForEntityClass(Movie.class)),
+                List.of(new VectorField("$.embeddedExtract", algorithm, attributes).as("embeddedExtract")));
+        vectorIndexService.awaitIndexing(indexName);
+        return System.currentTimeMillis() - startTime;
+    }
+
+    private void dropIfExists(String indexName) {
+        try {
+            jedis.ftDropIndex(indexName);
+        } catch (JedisDataException e) {
+            // No such index
+        }
+    }
+
+    private double vectorIndexSizeMb(String indexName) {
+        Object size = jedis.ftInfo(indexName).get("vector_index_sz_mb");
+        return size == null ? 0 : Double.parseDouble(size.toString());
+    }
+
+    private String scratchIndexName(String suffix) {
+        return indexer.getIndexName(Movie.class) + "-bench-" + suffix;
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.clamp(index, 0, sorted.length - 1)];
+    }
+}
@@ -1,55 +1,296 @@
 package com.redis.vectorsearch.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.redis.vectorsearch.domain.Movie;
-import com.redis.vectorsearch.repository.MovieRepository;
+import com.redis.vectorsearch.repository.MovieBulkOperations;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Service;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Loads the catalog through three stages connected by bounded queues: this thread parses
+ * the file and drops movies that are already saved, a pool of workers computes the extract
+ * embeddings, and writer threads store finished batches with pipelined JSON.SET. Embedding
+ * and writing overlap, and a full queue holds back the stage feeding it, so memory use is
+ * bounded by the queue capacities.
+ * <p>
+ * Movies found in the {@link EmbeddingSnapshot} take their vector from it and go straight
+ * to the writers, skipping the model.
+ * <p>
+ * When most of the catalog still has to be written, the index is dropped for the duration of
+ * the load, so RediSearch does not insert into the HNSW graph while the embedding workers need
+ * the CPU. {@link VectorIndexService#applyPrecision()} then builds it over all documents at once.
+ */
 @Service
 public class MovieService {
 
     private static final Logger log = LoggerFactory.getLogger(MovieService.class);
+    private static final List<Movie> END_OF_INPUT = Collections.unmodifiableList(new ArrayList<>());
+    private static final long POLL_MILLIS = 100;
 
     private final ObjectMapper objectMapper;
     private final ResourceLoader resourceLoader;
-    private final MovieRepository movieRepository;
+    private final MovieBulkOperations movieBulkOperations;
+    private final ExtractEmbedder extractEmbedder;
+    private final EmbeddingSnapshot embeddingSnapshot;
+    private final EmbeddingStatusService embeddingStatusService;
+    private final VectorIndexService vectorIndexService;
+    private final boolean exportSnapshotAfterLoad;
+    private final boolean deferIndexing;
+    private final int batchSize;
+    private final int embeddingWorkers;
+    private final int writers;
+    private final int queueCapacity;
+    private final int progressInterval;
 
-    public MovieService(ObjectMapper objectMapper, ResourceLoader resourceLoader, MovieRepository movieRepository) {
+    public MovieService(
+            ObjectMapper objectMapper,
+            ResourceLoader resourceLoader,
+            MovieBulkOperations movieBulkOperations,
+            ExtractEmbedder extractEmbedder,
+            EmbeddingSnapshot embeddingSnapshot,
+            EmbeddingStatusService embeddingStatusService,
+            VectorIndexService vectorIndexService,
+            @Value("${embeddings.snapshot.export-after-load:true}") boolean exportSnapshotAfterLoad,
+            @Value("${movies.load.defer-indexing:true}") boolean deferIndexing,
+            @Value("${movies.load.batch-size:500}") int batchSize,
+            @Value("${movies.load.embedding-workers:0}") int embeddingWorkers,
+            @Value("${movies.load.writers:2}") int writers,
+            @Value("${movies.load.queue-capacity:4}") int queueCapacity,
+            @Value("${movies.load.progress-interval:2000}") int progressInterval
+    ) {
         this.objectMapper = objectMapper;
         this.resourceLoader = resourceLoader;
-        this.movieRepository = movieRepository;
+        this.movieBulkOperations = movieBulkOperations;
+        this.extractEmbedder = extractEmbedder;
+        this.embeddingSnapshot = embeddingSnapshot;
+        this.embeddingStatusService = embeddingStatusService;
+        this.vectorIndexService = vectorIndexService;
+        this.exportSnapshotAfterLoad = exportSnapshotAfterLoad;
+        this.deferIndexing = deferIndexing;
+        this.batchSize = batchSize;
+        // Workers beyond the calls the model may run at once would only wait for it
+        this.embeddingWorkers = embeddingWorkers > 0
+                ? embeddingWorkers
+                : Math.min(Runtime.getRuntime().availableProcessors(), extractEmbedder.maxConcurrentCalls());
+        this.writers = writers;
+        this.queueCapacity = queueCapacity;
+        this.progressInterval = progressInterval;
+    }
+
+    /**
+     * Moves movies stored under the ids of earlier repository loads to the ids this loader
+     * assigns, so a partially loaded catalog is completed instead of duplicated.
+     */
+    public void adoptLegacyIds() {
+        long startTime = System.currentTimeMillis();
+        long adopted = movieBulkOperations.adoptLegacyIds();
+        if (adopted > 0) {
+            log.info("Moved {} movies stored under legacy ids to their title/year id in {} ms",
+                    adopted, System.currentTimeMillis() - startTime);
+        }
     }
 
     public void loadAndSaveMovies(String filePath) throws Exception {
         Resource resource = resourceLoader.getResource("classpath:" + filePath);
-        try (InputStream is = resource.getInputStream()) {
-            List<Movie> movies = objectMapper.readValue(is, new TypeReference<>() {});
-            List<Movie> unprocessedMovies = movies.stream()
-                    .filter(movie -> !movieRepository.existsById(movie.getTitle()) &&
-                            movie.getYear() > 1980
-                    ).toList();
+        BlockingQueue<List<Movie>> toEmbed = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<List<Movie>> toWrite = new ArrayBlockingQueue<>(queueCapacity);
+        CountDownLatch embeddersDone = new CountDownLatch(embeddingWorkers);
+        CountDownLatch writersDone = new CountDownLatch(writers);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        AtomicLong saved = new AtomicLong();
+        EmbeddingSnapshot.Vectors snapshot = embeddingSnapshot.open().orElse(null);
+        long skipped = 0;
+        long startTime = System.currentTimeMillis();
+        embeddingStatusService.loadingStarted();
+        // Rebuilding a mostly complete index would cost more than the graph updates it saves
+        boolean indexDropped = deferIndexing
+                && embeddingStatusService.getTotalDocNum() < embeddingStatusService.getExpectedDocNum() / 2;
+        if (indexDropped) {
+            vectorIndexService.dropIndex();
+            log.info("Dropped {} until loading is done, it is built over all documents afterwards", vectorIndexService.indexName());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(embeddingWorkers + writers);
+        for (int i = 0; i < embeddingWorkers; i++) {
+            executor.execute(() -> runStage(toEmbed, embeddersDone, failure, batch -> {
+                embed(batch);
+                enqueue(toWrite, batch, failure);
+            }));
+        }
+        for (int i = 0; i < writers; i++) {
+            executor.execute(() -> runStage(toWrite, writersDone, failure, batch -> {
+                movieBulkOperations.saveAll(batch);
+                embeddingStatusService.recordSaved(batch.size());
+                long total = saved.addAndGet(batch.size());
+                if (total / progressInterval != (total - batch.size()) / progressInterval) {
+                    long elapsedMillis = System.currentTimeMillis() - startTime;
+                    log.info("Embedded and saved {} movies so far ({} docs/sec)", total, docsPerSecond(total, elapsedMillis));
+                }
+            }));
+        }
+
+        try (InputStream is = resource.getInputStream();
+             JsonParser parser = objectMapper.getFactory().createParser(is)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalStateException("Expected " + filePath + " to contain a JSON array of movies");
+            }
+
+            List<Movie> batch = new ArrayList<>(batchSize);
+            while (parser.nextToken() == JsonToken.START_OBJECT && failure.get() == null) {
+                Movie movie = objectMapper.readValue(parser, Movie.class);
+                if (movie.getYear() <= 1980) {
+                    continue;
+                }
+                movie.setId(MovieBulkOperations.idFor(movie));
+                batch.add(movie);
+                if (batch.size() == batchSize) {
+                    skipped += enqueueMissing(toEmbed, toWrite, snapshot, batch, failure);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                skipped += enqueueMissing(toEmbed, toWrite, snapshot, batch, failure);
+            }
+        } catch (Exception e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            for (int i = 0; i < embeddingWorkers; i++) {
+                enqueue(toEmbed, END_OF_INPUT, failure);
+            }
+            embeddersDone.await();
+            for (int i = 0; i < writers; i++) {
+                enqueue(toWrite, END_OF_INPUT, failure);
+            }
+            writersDone.await();
+            executor.shutdown();
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        long elapsedMillis = System.currentTimeMillis() - startTime;
+        log.info("Saved {} movies in {} ms ({} docs/sec) with {} embedding workers, {} already saved, {}",
+                saved.get(), elapsedMillis, docsPerSecond(saved.get(), elapsedMillis), embeddingWorkers, skipped,
+                indexDropped ? "index built afterwards" : "indexed while writing");
+
+        if (exportSnapshotAfterLoad && saved.get() > 0 && (snapshot == null || snapshot.size() < saved.get() + skipped)) {
+            embeddingSnapshot.export();
+        }
+    }
 
-            int batchSize = 500;
-            long startTime = System.currentTimeMillis();
-            int totalSaved = 0;
+    /**
+     * Queues the movies of the batch that are not saved yet, which makes resuming an
+     * interrupted load cost one pipelined EXISTS round trip per batch. Movies whose vector
+     * is in the snapshot, or that have no extract to embed, go directly to the writers.
+     *
+     * @return the number of movies skipped because they are already saved
+     */
+    private int enqueueMissing(
+            BlockingQueue<List<Movie>> toEmbed,
+            BlockingQueue<List<Movie>> toWrite,
+            EmbeddingSnapshot.Vectors snapshot,
+            List<Movie> batch,
+            AtomicReference<Exception> failure
+    ) throws InterruptedException {
+        Set<String> missingIds = new HashSet<>(movieBulkOperations.missingIds(batch.stream().map(Movie::getId).toList()));
+        List<Movie> ready = new ArrayList<>();
+        List<Movie> needEmbedding = new ArrayList<>();
+        for (Movie movie : batch) {
+            if (!missingIds.contains(movie.getId())) {
+                continue;
+            }
+            float[] embedding = snapshot == null ? null : snapshot.get(movie.getId());
+            if (embedding != null) {
+                movie.setEmbeddedExtract(embedding);
+            }
+            (embedding != null || movie.getExtract() == null ? ready : needEmbedding).add(movie);
+        }
+        if (!ready.isEmpty()) {
+            enqueue(toWrite, ready, failure);
+        }
+        if (!needEmbedding.isEmpty()) {
+            enqueue(toEmbed, needEmbedding, failure);
+        }
+        return batch.size() - ready.size() - needEmbedding.size();
+    }
 
-            for (int i = 0; i < unprocessedMovies.size(); i += batchSize) {
-                int end = Math.min(i + batchSize, unprocessedMovies.size());
-                List<Movie> batch = unprocessedMovies.subList(i, end);
-                movieRepository.saveAll(batch);
-                totalSaved += batch.size();
+    private void embed(List<Movie> batch) throws InterruptedException {
+        List<Movie> withExtract = batch.stream().filter(movie -> movie.getExtract() != null).toList();
+        if (withExtract.isEmpty()) {
+            return;
+        }
+        List<float[]> embeddings = extractEmbedder.embed(withExtract.stream().map(Movie::getExtract).toList());
+        for (int i = 0; i < withExtract.size(); i++) {
+            withExtract.get(i).setEmbeddedExtract(embeddings.get(i));
+        }
+    }
+
+    private interface BatchHandler {
+        void handle(List<Movie> batch) throws Exception;
+    }
+
+    /**
+     * Takes batches until the end marker arrives or any stage has failed.
+     */
+    private static void runStage(
+            BlockingQueue<List<Movie>> queue,
+            CountDownLatch done,
+            AtomicReference<Exception> failure,
+            BatchHandler handler
+    ) {
+        try {
+            while (failure.get() == null) {
+                List<Movie> batch = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (batch == END_OF_INPUT) {
+                    return;
+                }
+                if (batch != null) {
+                    handler.handle(batch);
+                }
             }
+        } catch (Exception e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            done.countDown();
+        }
+    }
 
-            long elapsedMillis = System.currentTimeMillis() - startTime;
-            log.info("Saved " + totalSaved + " movies in " + elapsedMillis + " ms");
+    /**
+     * Blocks while the queue is full, giving up once any stage has failed so a dead
+     * consumer cannot hang its producer.
+     */
+    private static void enqueue(BlockingQueue<List<Movie>> queue, List<Movie> batch, AtomicReference<Exception> failure)
+            throws InterruptedException {
+        while (failure.get() == null) {
+            if (queue.offer(batch, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
         }
     }
-}
\ No newline at end of file
+
+    private static long docsPerSecond(long docs, long elapsedMillis) {
+        return elapsedMillis == 0 ? docs : docs * 1000 / elapsedMillis;
+    }
+}
@@ -1,32 +1,82 @@
 package com.redis.vectorsearch.service;
 
+import com.redis.vectorsearch.domain.BatchSearchRequest;
 import com.redis.vectorsearch.domain.Movie;
 import com.redis.vectorsearch.domain.Movie$;
 import com.redis.om.spring.search.stream.EntityStream;
 import com.redis.om.spring.search.stream.SearchStream;
 import com.redis.om.spring.tuple.Fields;
 import com.redis.om.spring.tuple.Pair;
+import com.redis.om.spring.tuple.Tuples;
 import com.redis.om.spring.vectorize.Embedder;
+import com.redis.vectorsearch.repository.MovieBulkOperations;
 import com.redis.vectorsearch.repository.MovieRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.search.Query;
+import redis.clients.jedis.search.SearchResult;
 
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 @Service
 public class SearchService {
 
     private static final Logger logger = LoggerFactory.getLogger(SearchService.class);
+    private static final Pattern TAG_SPECIAL_CHARACTERS = Pattern.compile("[^\\p{L}\\p{N}_]");
+    private static final Pattern TERM = Pattern.compile("[\\p{L}\\p{N}]+");
+    private static final int DEFAULT_NEAREST_NEIGHBORS = 10;
+
     private final MovieRepository movieRepository;
+    private final MovieBulkOperations movieBulkOperations;
     private final EntityStream entityStream;
     private final Embedder embedder;
+    private final VectorIndexService vectorIndexService;
+    private final FilteredKnnPlanner filteredKnnPlanner;
+    private final ExtractChunkService extractChunkService;
+    private final JedisPooled jedis;
+    private final int hybridCandidateMultiplier;
+    private final int rrfRankConstant;
 
-    public SearchService(MovieRepository movieRepository, EntityStream entityStream, Embedder embedder) {
+    public SearchService(
+            MovieRepository movieRepository,
+            MovieBulkOperations movieBulkOperations,
+            EntityStream entityStream,
+            Embedder embedder,
+            VectorIndexService vectorIndexService,
+            FilteredKnnPlanner filteredKnnPlanner,
+            ExtractChunkService extractChunkService,
+            JedisPooled jedis,
+            @Value("${search.hybrid.candidate-multiplier:3}") int hybridCandidateMultiplier,
+            @Value("${search.hybrid.rrf-rank-constant:60}") int rrfRankConstant
+    ) {
         this.movieRepository = movieRepository;
+        this.movieBulkOperations = movieBulkOperations;
         this.entityStream = entityStream;
         this.embedder = embedder;
+        this.vectorIndexService = vectorIndexService;
+        this.filteredKnnPlanner = filteredKnnPlanner;
+        this.extractChunkService = extractChunkService;
+        this.jedis = jedis;
+        this.hybridCandidateMultiplier = hybridCandidateMultiplier;
+        this.rrfRankConstant = rrfRankConstant;
+    }
+
+    /**
+     * How the two ranked lists of a hybrid search are combined.
+     */
+    public enum Fusion {
+        /** Sum of 1 / (rank constant + rank) over the lists a movie appears in. */
+        RRF,
+        /** textWeight x BM25 score normalized by the best one, plus the rest x cosine similarity. */
+        WEIGHTED
     }
 
     public Map<String, Object> search(
@@ -44,14 +94,12 @@ public class SearchService {
         logger.info("Received genres: {}", genres);
         logger.info("Received nearest neighbors: {}", numberOfNearestNeighbors);
 
-        SearchStream<Movie> stream = entityStream.of(Movie.class);
-
         if (extract != null) {
-            float[] embeddedQuery = embedder.getTextEmbeddingsAsFloats(List.of(extract), Movie$.EXTRACT).getFirst();
-            stream = stream.filter(Movie$.EMBEDDED_EXTRACT.knn(numberOfNearestNeighbors, embeddedQuery))
-                            .sorted(Movie$._EMBEDDED_EXTRACT_SCORE);
+            return searchVectorIndex(filterQuery(title, actors, year, genres), extract, numberOfNearestNeighbors);
         }
 
+        SearchStream<Movie> stream = entityStream.of(Movie.class);
+
         long startTime = System.currentTimeMillis();
         List<Pair<Movie, Double>> matchedMovies = stream
                 .filter(Movie$.TITLE.containing(title))
@@ -74,6 +122,357 @@ public class SearchService {
         return result;
     }
 
+    /**
+     * KNN through {@link VectorIndexService}, which encodes the query vector in the index's
+     * type and passes the configured EF_RUNTIME. Filtered searches are planned by
+     * {@link FilteredKnnPlanner} according to how many movies the filters match.
+     */
+    private Map<String, Object> searchVectorIndex(
+            String filterQuery,
+            String extract,
+            Integer numberOfNearestNeighbors
+    ) {
+        int k = nearestNeighbors(numberOfNearestNeighbors);
+        float[] embeddedQuery = embedder.getTextEmbeddingsAsFloats(List.of(extract), Movie$.EXTRACT).getFirst();
+
+        long startTime = System.currentTimeMillis();
+        Map<String, Object> result = new HashMap<>();
+        List<Pair<Movie, Double>> matchedMovies;
+        if ("*".equals(filterQuery)) {
+            matchedMovies = vectorIndexService.knn(filterQuery, embeddedQuery, k);
+        } else {
+            FilteredKnnPlanner.Result planned = filteredKnnPlanner.knn(filterQuery, embeddedQuery, k);
+            matchedMovies = planned.matches();
+            result.put("strategy", planned.strategy());
+            result.put("filterMatches", planned.filterMatches());
+        }
+
+        long endTime = System.currentTimeMillis();
+        long searchTime = endTime - startTime;
+
+        logger.info("Search on {} vectors completed in {} ms", vectorIndexService.precision(), searchTime);
+
+        result.put("movies", matchedMovies);
+        result.put("count", matchedMovies.size());
+        result.put("searchTime", searchTime);
+
+        return result;
+    }
+
+    /**
+     * @return the RediSearch query for the title, cast, year and genre filters, {@code *} when none is set
+     */
+    private String filterQuery(String title, List<String> actors, Integer year, List<String> genres) {
+        return entityStream.of(Movie.class)
+                .filter(Movie$.TITLE.containing(title))
+                .filter(Movie$.CAST.eq(actors))
+                .filter(Movie$.YEAR.eq(year))
+                .filter(Movie$.GENRES.eq(genres))
+                .backingQuery();
+    }
+
+    /**
+     * Full-text search on the title and extract combined with KNN on the extract embedding.
+     * <p>
+     * The extract is both embedded for KNN and split into terms matched with BM25 against
+     * {@code title} and {@code extract}. The two queries share the title, cast, year and genre
+     * filters and go to Redis in one pipeline, each returning candidate-multiplier times k
+     * candidates. Their ranked lists are fused and the best k movies are returned with the
+     * fused score, highest first.
+     */
+    public Map<String, Object> hybridSearch(
+            String title,
+            String extract,
+            List<String> actors,
+            Integer year,
+            List<String> genres,
+            Integer numberOfNearestNeighbors,
+            Fusion fusion,
+            double textWeight
+    ) {
+        List<String> terms = terms(extract);
+        if (terms.isEmpty()) {
+            return search(title, extract, actors, year, genres, numberOfNearestNeighbors);
+        }
+        int k = nearestNeighbors(numberOfNearestNeighbors);
+        int candidates = k * hybridCandidateMultiplier;
+
+        float[] embeddedQuery = embedder.getTextEmbeddingsAsFloats(List.of(extract), Movie$.EXTRACT).getFirst();
+        String filterQuery = filterQuery(title, actors, year, genres);
+        String textQuery = "@title|" + VectorIndexService.TEXT_FIELD + ":(" + String.join("|", terms) + ")";
+        if (!"*".equals(filterQuery)) {
+            textQuery += " " + filterQuery;
+        }
+
+        long startTime = System.currentTimeMillis();
+        Response<SearchResult> textResponse;
+        Response<SearchResult> vectorResponse;
+        try (Pipeline pipeline = jedis.pipelined()) {
+            textResponse = pipeline.ftSearch(vectorIndexService.indexName(), new Query(textQuery)
+                    .setScorer("BM25")
+                    .setWithScores()
+                    .returnFields("$")
+                    .limit(0, candidates)
+                    .dialect(2));
+            vectorResponse = pipeline.ftSearch(vectorIndexService.indexName(),
+                    vectorIndexService.knnQuery(filterQuery, embeddedQuery, candidates));
+            pipeline.sync();
+        }
+
+        List<Pair<Movie, Double>> textMatches = textResponse.get().getDocuments().stream()
+                .map(document -> Tuples.of(vectorIndexService.toMovie(document), document.getScore()))
+                .collect(Collectors.toList());
+        List<Pair<Movie, Double>> vectorMatches = vectorIndexService.knnMatches(vectorResponse.get(), embeddedQuery, candidates);
+        List<Pair<Movie, Double>> matchedMovies = fuse(textMatches, vectorMatches, fusion, textWeight, rrfRankConstant, k);
+
+        long searchTime = System.currentTimeMillis() - startTime;
+        logger.info("Hybrid search fused {} text and {} vector candidates with {} in {} ms",
+                textMatches.size(), vectorMatches.size(), fusion, searchTime);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("movies", matchedMovies);
+        result.put("count", matchedMovies.size());
+        result.put("searchTime", searchTime);
+        result.put("mode", "hybrid");
+        result.put("fusion", fusion);
+        return result;
+    }
+
+    /**
+     * Merges BM25 hits, scored by relevance, with KNN hits, scored by cosine distance, into the
+     * k movies with the highest fused score. RRF adds 1 / (rankConstant + rank) from each list;
+     * WEIGHTED adds the BM25 score relative to the best one, times textWeight, to the cosine
+     * similarity, times 1 - textWeight.
+     */
+    static List<Pair<Movie, Double>> fuse(
+            List<Pair<Movie, Double>> textMatches,
+            List<Pair<Movie, Double>> vectorMatches,
+            Fusion fusion,
+            double textWeight,
+            int rrfRankConstant,
+            int k
+    ) {
+        Map<String, Movie> movies = new LinkedHashMap<>();
+        Map<String, Double> fused = new HashMap<>();
+        double bestTextScore = textMatches.stream().mapToDouble(Pair::getSecond).max().orElse(0);
+        for (int rank = 0; rank < textMatches.size(); rank++) {
+            Movie movie = textMatches.get(rank).getFirst();
+            movies.putIfAbsent(movie.getId(), movie);
+            double score = fusion == Fusion.RRF
+                    ? 1.0 / (rrfRankConstant + rank + 1)
+                    : textWeight * (bestTextScore > 0 ? textMatches.get(rank).getSecond() / bestTextScore : 0);
+            fused.merge(movie.getId(), score, Double::sum);
+        }
+        for (int rank = 0; rank < vectorMatches.size(); rank++) {
+            Movie movie = vectorMatches.get(rank).getFirst();
+            movies.putIfAbsent(movie.getId(), movie);
+            double score = fusion == Fusion.RRF
+                    ? 1.0 / (rrfRankConstant + rank + 1)
+                    : (1 - textWeight) * Math.max(0, 1 - vectorMatches.get(rank).getSecond());
+            fused.merge(movie.getId(), score, Double::sum);
+        }
+
+        return fused.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .limit(k)
+                .map(entry -> Tuples.of(movies.get(entry.getKey()), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * KNN over the passages of the extracts rather than one vector per extract, see
+     * {@link ExtractChunkService}. Scores are aggregated cosine similarities, higher is closer.
+     */
+    public Map<String, Object> chunkedSearch(
+            String title,
+            String extract,
+            List<String> actors,
+            Integer year,
+            List<String> genres,
+            Integer numberOfNearestNeighbors
+    ) {
+        float[] embeddedQuery = embedder.getTextEmbeddingsAsFloats(List.of(extract), Movie$.EXTRACT).getFirst();
+        String filterQuery = filterQuery(title, actors, year, genres);
+
+        long startTime = System.currentTimeMillis();
+        List<Pair<Movie, Double>> matchedMovies = extractChunkService.knn(
+                filterQuery, embeddedQuery, nearestNeighbors(numberOfNearestNeighbors));
+
+        long searchTime = System.currentTimeMillis() - startTime;
+        logger.info("Passage search completed in {} ms", searchTime);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("movies", matchedMovies);
+        result.put("count", matchedMovies.size());
+        result.put("searchTime", searchTime);
+        result.put("mode", "chunked");
+        result.put("aggregation", extractChunkService.aggregation());
+        return result;
+    }
+
+    /**
+     * Runs several KNN searches at once: every text is embedded in a single model call, and
+     * the KNN queries go to Redis in one pipeline. Filtered queries are planned like single
+     * searches by {@link FilteredKnnPlanner}: their filters are counted in a first pipeline,
+     * and HNSW searches that come back short are repeated by brute force in a last one.
+     *
+     * @return one result per query, in the order of the queries
+     */
+    public Map<String, Object> batchSearch(List<BatchSearchRequest.Query> queries) {
+        long startTime = System.currentTimeMillis();
+        List<String> texts = queries.stream().map(BatchSearchRequest.Query::text).distinct().toList();
+        List<float[]> embeddings = embedder.getTextEmbeddingsAsFloats(texts, Movie$.EXTRACT);
+        Map<String, float[]> embeddingByText = new HashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            embeddingByText.put(texts.get(i), embeddings.get(i));
+        }
+        long embeddingTime = System.currentTimeMillis() - startTime;
+
+        int size = queries.size();
+        List<String> filters = new ArrayList<>(size);
+        for (BatchSearchRequest.Query query : queries) {
+            filters.add(filterQuery(query.title(), query.cast(), query.year(), query.genres()));
+        }
+
+        List<Response<SearchResult>> counts = new ArrayList<>(Collections.nCopies(size, null));
+        if (filters.stream().anyMatch(filter -> !"*".equals(filter))) {
+            try (Pipeline pipeline = jedis.pipelined()) {
+                for (int i = 0; i < size; i++) {
+                    if (!"*".equals(filters.get(i))) {
+                        counts.set(i, pipeline.ftSearch(vectorIndexService.indexName(), vectorIndexService.countQuery(filters.get(i))));
+                    }
+                }
+                pipeline.sync();
+            }
+        }
+        long[] filterMatches = new long[size];
+        FilteredKnnPlanner.Strategy[] strategies = new FilteredKnnPlanner.Strategy[size];
+        for (int i = 0; i < size; i++) {
+            if (counts.get(i) != null) {
+                filterMatches[i] = counts.get(i).get().getTotalResults();
+                strategies[i] = filteredKnnPlanner.plan(filterMatches[i]);
+            }
+        }
+
+        List<Response<SearchResult>> responses = new ArrayList<>(Collections.nCopies(size, null));
+        try (Pipeline pipeline = jedis.pipelined()) {
+            for (int i = 0; i < size; i++) {
+                if (strategies[i] != FilteredKnnPlanner.Strategy.EMPTY) {
+                    BatchSearchRequest.Query query = queries.get(i);
+                    responses.set(i, pipeline.ftSearch(vectorIndexService.indexName(), vectorIndexService.knnQuery(
+                            filters.get(i),
+                            embeddingByText.get(query.text()),
+                            nearestNeighbors(query.numberOfNearestNeighbors()),
+                            strategies[i] == FilteredKnnPlanner.Strategy.BRUTE_FORCE)));
+                }
+            }
+            pipeline.sync();
+        }
+
+        List<List<Pair<Movie, Double>>> matches = new ArrayList<>(size);
+        List<Integer> tooFew = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            BatchSearchRequest.Query query = queries.get(i);
+            int k = nearestNeighbors(query.numberOfNearestNeighbors());
+            List<Pair<Movie, Double>> matchedMovies = responses.get(i) == null
+                    ? List.of()
+                    : vectorIndexService.knnMatches(responses.get(i).get(), embeddingByText.get(query.text()), k);
+            matches.add(matchedMovies);
+            if (strategies[i] == FilteredKnnPlanner.Strategy.HNSW
+                    && filteredKnnPlanner.needsBruteForce(matchedMovies.size(), k, filterMatches[i])) {
+                tooFew.add(i);
+            }
+        }
+        if (!tooFew.isEmpty()) {
+            Map<Integer, Response<SearchResult>> retries = new HashMap<>();
+            try (Pipeline pipeline = jedis.pipelined()) {
+                for (Integer i : tooFew) {
+                    BatchSearchRequest.Query query = queries.get(i);
+                    retries.put(i, pipeline.ftSearch(vectorIndexService.indexName(), vectorIndexService.knnQuery(
+                            filters.get(i),
+                            embeddingByText.get(query.text()),
+                            nearestNeighbors(query.numberOfNearestNeighbors()),
+                            true)));
+                }
+                pipeline.sync();
+            }
+            for (Map.Entry<Integer, Response<SearchResult>> retry : retries.entrySet()) {
+                BatchSearchRequest.Query query = queries.get(retry.getKey());
+                matches.set(retry.getKey(), vectorIndexService.knnMatches(retry.getValue().get(),
+                        embeddingByText.get(query.text()), nearestNeighbors(query.numberOfNearestNeighbors())));
+                strategies[retry.getKey()] = FilteredKnnPlanner.Strategy.HNSW_THEN_BRUTE_FORCE;
+            }
+        }
+
+        List<Map<String, Object>> results = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("movies", matches.get(i));
+            result.put("count", matches.get(i).size());
+            if (strategies[i] != null) {
+                result.put("strategy", strategies[i]);
+                result.put("filterMatches", filterMatches[i]);
+            }
+            results.add(result);
+        }
+
+        long searchTime = System.currentTimeMillis() - startTime;
+        logger.info("Batch of {} searches ({} distinct texts) completed in {} ms, {} ms embedding",
+                queries.size(), texts.size(), searchTime, embeddingTime);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("results", results);
+        result.put("count", results.size());
+        result.put("embeddingTime", embeddingTime);
+        result.put("searchTime", searchTime);
+        return result;
+    }
+
+    /**
+     * Movies closest to the stored extract embedding of the given movie, which is read from its
+     * document instead of running the model again. The movie itself is filtered out.
+     *
+     * @return empty when the movie does not exist or has no embedding
+     */
+    public Optional<Map<String, Object>> similar(String id, Integer numberOfNearestNeighbors) {
+        long startTime = System.currentTimeMillis();
+        Optional<float[]> embedding = movieBulkOperations.embedding(id);
+        if (embedding.isEmpty()) {
+            return Optional.empty();
+        }
+        String filterQuery = "-@id:{" + TAG_SPECIAL_CHARACTERS.matcher(id).replaceAll("\\\\$0") + "}";
+        List<Pair<Movie, Double>> matchedMovies = vectorIndexService.knn(
+                filterQuery, embedding.get(), nearestNeighbors(numberOfNearestNeighbors));
+
+        long searchTime = System.currentTimeMillis() - startTime;
+        logger.info("Found {} movies similar to {} in {} ms", matchedMovies.size(), id, searchTime);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("movies", matchedMovies);
+        result.put("count", matchedMovies.size());
+        result.put("searchTime", searchTime);
+        return Optional.of(result);
+    }
+
+    private static int nearestNeighbors(Integer numberOfNearestNeighbors) {
+        return numberOfNearestNeighbors == null ? DEFAULT_NEAREST_NEIGHBORS : numberOfNearestNeighbors;
+    }
+
+    /**
+     * @return the distinct lower-cased words of the text, safe to use in a query
+     */
+    private static List<String> terms(String text) {
+        if (text == null) {
+            return List.of();
+        }
+        Set<String> terms = new LinkedHashSet<>();
+        Matcher matcher = TERM.matcher(text.toLowerCase(Locale.ROOT));
+        while (matcher.find()) {
+            terms.add(matcher.group());
+        }
+        return new ArrayList<>(terms);
+    }
+
     public Set<String> getAllGenres() {
         logger.info("Fetching all unique genres");
         long startTime = System.currentTimeMillis();
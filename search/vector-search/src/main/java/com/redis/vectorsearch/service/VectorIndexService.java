@@ -0,0 +1,432 @@
+package com.redis.vectorsearch.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redis.om.spring.indexing.RediSearchIndexer;
+import com.redis.om.spring.tuple.Pair;
+import com.redis.om.spring.tuple.Tuples;
+import com.redis.vectorsearch.domain.Movie;
+import com.redis.vectorsearch.repository.MovieBulkOperations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.search.Document;
+import redis.clients.jedis.search.FTCreateParams;
+import redis.clients.jedis.search.IndexDataType;
+import redis.clients.jedis.search.Query;
+import redis.clients.jedis.search.SearchResult;
+import redis.clients.jedis.search.schemafields.NumericField;
+import redis.clients.jedis.search.schemafields.SchemaField;
+import redis.clients.jedis.search.schemafields.TagField;
+import redis.clients.jedis.search.schemafields.TextField;
+import redis.clients.jedis.search.schemafields.VectorField;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Keeps the {@link Movie} index's vector field at the configured {@link VectorPrecision} and
+ * runs KNN queries against it.
+ * <p>
+ * Redis OM Spring creates the index from the annotations, with a float32 vector field. For any
+ * other precision the index is dropped (keeping the documents) and recreated with the same
+ * fields but a smaller vector type, and Redis re-indexes the documents in the background.
+ * Queries then have to go through Jedis, because the query vector must be encoded in the
+ * index's type.
+ */
+@Service
+public class VectorIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VectorIndexService.class);
+
+    /** Matches the {@code @Indexed} annotation on {@link Movie#getEmbeddedExtract()}. */
+    public static final int DIMENSION = 384;
+    public static final String VECTOR_FIELD = "embeddedExtract";
+    public static final String TEXT_FIELD = "extract";
+    private static final String FLOAT_PATH = "$.embeddedExtract";
+    private static final String INT8_PATH = "$.embeddedExtractInt8";
+    private static final String SCORE_FIELD = "__embeddedExtract_score";
+    private static final long INDEXING_POLL_MILLIS = 200;
+    private static final int QUANTIZE_BATCH_SIZE = 1000;
+
+    private final JedisPooled jedis;
+    private final RediSearchIndexer indexer;
+    private final MovieBulkOperations movieBulkOperations;
+    private final ObjectMapper objectMapper;
+    private final EmbeddingStatusService embeddingStatusService;
+    private final VectorPrecision precision;
+    private final int rescoreOversampling;
+    private final int hnswM;
+    private final int hnswEfConstruction;
+    private final int hnswEfRuntime;
+    private final long indexingTimeoutMillis;
+    private volatile float int8Scale = Float.NaN;
+
+    public VectorIndexService(
+            JedisPooled jedis,
+            RediSearchIndexer indexer,
+            MovieBulkOperations movieBulkOperations,
+            ObjectMapper objectMapper,
+            EmbeddingStatusService embeddingStatusService,
+            @Value("${vectors.precision:FLOAT32}") VectorPrecision precision,
+            @Value("${vectors.int8.rescore-oversampling:4}") int rescoreOversampling,
+            @Value("${vectors.hnsw.m:16}") int hnswM,
+            @Value("${vectors.hnsw.ef-construction:200}") int hnswEfConstruction,
+            @Value("${vectors.hnsw.ef-runtime:10}") int hnswEfRuntime,
+            @Value("${vectors.indexing-timeout-ms:600000}") long indexingTimeoutMillis
+    ) {
+        this.jedis = jedis;
+        this.indexer = indexer;
+        this.movieBulkOperations = movieBulkOperations;
+        this.objectMapper = objectMapper;
+        this.embeddingStatusService = embeddingStatusService;
+        this.precision = precision;
+        this.rescoreOversampling = rescoreOversampling;
+        this.hnswM = hnswM;
+        this.hnswEfConstruction = hnswEfConstruction;
+        this.hnswEfRuntime = hnswEfRuntime;
+        this.indexingTimeoutMillis = indexingTimeoutMillis;
+    }
+
+    public VectorPrecision precision() {
+        return precision;
+    }
+
+    public String indexName() {
+        return indexer.getIndexName(Movie.class);
+    }
+
+    /**
+     * Brings the stored documents and the index in line with the configured precision and
+     * HNSW parameters, with {@code extract} full-text indexed for hybrid search. For
+     * {@link VectorPrecision#INT8}, a rebuild first quantizes every embedding, and otherwise
+     * only the movies without a quantized copy yet are quantized, with the stored scale.
+     * Also builds the index in one pass when the loader dropped it with {@link #dropIndex()}.
+     */
+    public void applyPrecision() throws IOException, InterruptedException {
+        Map<String, Map<String, String>> attributes = indexedAttributes();
+        Map<String, String> indexed = attributes.getOrDefault(VECTOR_FIELD, Map.of());
+        if (attributes.containsKey(TEXT_FIELD) && isBuiltWithConfiguredParameters(indexed)) {
+            if (precision == VectorPrecision.INT8) {
+                quantizeMissingEmbeddings();
+            }
+            logger.info("Vector field already indexed as {} with M={}, EF_CONSTRUCTION={}",
+                    precision, hnswM, hnswEfConstruction);
+            return;
+        }
+
+        if (precision == VectorPrecision.INT8) {
+            quantizeEmbeddings();
+        }
+        long startTime = System.currentTimeMillis();
+        embeddingStatusService.indexingStarted();
+        dropIndex();
+        jedis.ftCreate(indexName(), FTCreateParams.createParams()
+                        .on(IndexDataType.JSON)
+                        .prefix(indexer.getKeyspaceForEntityClass(Movie.class)),
+                schema());
+        jedis.set(indexParametersKey(), buildParameters());
+        awaitIndexing();
+        logger.info("Built {} with its vector field as {} with M={}, EF_CONSTRUCTION={} (was {}) in {} ms",
+                indexName(), precision, hnswM, hnswEfConstruction, indexed, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * FT.INFO reports the vector type, M and EF_CONSTRUCTION depending on the RediSearch
+     * version, so the values it does report are compared, and the parameters recorded at the
+     * last build cover the rest. Without such a record, FT.INFO has to report all three.
+     * EF_RUNTIME is not a build parameter: it is passed with every query.
+     */
+    private boolean isBuiltWithConfiguredParameters(Map<String, String> indexed) {
+        Map<String, String> configured = Map.of(
+                "data_type", precision.name(),
+                "m", String.valueOf(hnswM),
+                "ef_construction", String.valueOf(hnswEfConstruction));
+        for (Map.Entry<String, String> parameter : configured.entrySet()) {
+            String reported = indexed.get(parameter.getKey());
+            if (reported != null && !reported.equalsIgnoreCase(parameter.getValue())) {
+                return false;
+            }
+        }
+        return buildParameters().equals(jedis.get(indexParametersKey()))
+                || indexed.keySet().containsAll(configured.keySet());
+    }
+
+    private String buildParameters() {
+        return "TYPE=" + precision + ",M=" + hnswM + ",EF_CONSTRUCTION=" + hnswEfConstruction;
+    }
+
+    /**
+     * Drops the index but keeps the documents, so that writing many of them does not update
+     * the HNSW graph on every insert. {@link #applyPrecision()} builds it again afterwards.
+     */
+    public void dropIndex() {
+        try {
+            jedis.ftDropIndex(indexName());
+        } catch (JedisDataException e) {
+            // No such index
+        }
+    }
+
+    /**
+     * Blocks until FT.INFO reports that the background scan of existing documents is done.
+     */
+    public void awaitIndexing() throws InterruptedException {
+        awaitIndexing(indexName());
+    }
+
+    /**
+     * Blocks until FT.INFO reports that the background scan of the given index is done.
+     *
+     * @throws IllegalStateException if it is still scanning after {@code vectors.indexing-timeout-ms}
+     */
+    public void awaitIndexing(String indexName) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + indexingTimeoutMillis;
+        while (!"0".equals(String.valueOf(jedis.ftInfo(indexName).get("indexing")))) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException(indexName + " was still indexing after " + indexingTimeoutMillis + " ms");
+            }
+            Thread.sleep(INDEXING_POLL_MILLIS);
+        }
+    }
+
+    /**
+     * Nearest neighbours of the query vector among the movies matching {@code filterQuery}.
+     * With {@link VectorPrecision#INT8}, {@code rescore-oversampling} times as many candidates
+     * are fetched and reordered by their exact float32 distance.
+     *
+     * @return movies with their cosine distance to the query, closest first
+     */
+    public List<Pair<Movie, Double>> knn(String filterQuery, float[] queryVector, int k) {
+        return knn(filterQuery, queryVector, k, false);
+    }
+
+    /**
+     * Like {@link #knn(String, float[], int)}, but with {@code bruteForce} the filtered
+     * documents are scored one by one (HYBRID_POLICY ADHOC_BF) instead of walking the HNSW
+     * graph, which is exact and cheap when the filter matches few documents.
+     */
+    public List<Pair<Movie, Double>> knn(String filterQuery, float[] queryVector, int k, boolean bruteForce) {
+        return knnMatches(jedis.ftSearch(indexName(), knnQuery(filterQuery, queryVector, k, bruteForce)), queryVector, k);
+    }
+
+    /**
+     * The FT.SEARCH query behind {@link #knn}, for callers that pipeline it with other queries.
+     */
+    public Query knnQuery(String filterQuery, float[] queryVector, int k) {
+        return knnQuery(filterQuery, queryVector, k, false);
+    }
+
+    public Query knnQuery(String filterQuery, float[] queryVector, int k, boolean bruteForce) {
+        int candidates = precision == VectorPrecision.INT8 ? k * rescoreOversampling : k;
+        // Brute force scores every match, so there is no graph search to tune
+        String policy = bruteForce ? " HYBRID_POLICY ADHOC_BF" : " EF_RUNTIME $ef_runtime";
+        Query query = new Query("(" + filterQuery + ")=>[KNN $k @" + VECTOR_FIELD + " $vector" + policy + " AS " + SCORE_FIELD + "]")
+                .addParam("k", candidates)
+                .addParam("vector", precision.toBlob(queryVector, int8Scale()))
+                .setSortBy(SCORE_FIELD, true)
+                .returnFields("$", SCORE_FIELD)
+                .limit(0, candidates)
+                .dialect(2);
+        if (!bruteForce) {
+            query.addParam("ef_runtime", hnswEfRuntime);
+        }
+        return query;
+    }
+
+    /**
+     * Turns the result of a {@link #knnQuery} into the closest k movies with their distances.
+     */
+    public List<Pair<Movie, Double>> knnMatches(SearchResult result, float[] queryVector, int k) {
+        List<Pair<Movie, Double>> matches = new ArrayList<>();
+        for (Document document : result.getDocuments()) {
+            Movie movie = toMovie(document);
+            double distance = precision == VectorPrecision.INT8 && movie.getEmbeddedExtract() != null
+                    ? VectorPrecision.cosineDistance(queryVector, movie.getEmbeddedExtract())
+                    : Double.parseDouble(document.getString(SCORE_FIELD));
+            matches.add(Tuples.of(movie, distance));
+        }
+        if (precision == VectorPrecision.INT8) {
+            matches.sort(Comparator.comparingDouble(Pair::getSecond));
+        }
+        return matches.size() > k ? new ArrayList<>(matches.subList(0, k)) : matches;
+    }
+
+    /**
+     * @return the element type of the indexed vector field according to FT.INFO
+     */
+    public String indexedVectorType() {
+        return indexedAttributes().getOrDefault(VECTOR_FIELD, Map.of()).get("data_type");
+    }
+
+    /**
+     * @return the FT.INFO properties of every indexed field, with lower-cased names, by field name
+     */
+    private Map<String, Map<String, String>> indexedAttributes() {
+        Map<String, Map<String, String>> indexed = new HashMap<>();
+        Object attributes;
+        try {
+            attributes = jedis.ftInfo(indexName()).get("attributes");
+        } catch (JedisDataException e) {
+            // No such index
+            return indexed;
+        }
+        if (attributes instanceof List<?> fields) {
+            for (Object field : fields) {
+                Map<String, String> properties = properties(field);
+                indexed.put(properties.get("attribute"), properties);
+            }
+        }
+        return indexed;
+    }
+
+    /**
+     * @return the number of movies matching the filter, without loading any of them
+     */
+    public long count(String filterQuery) {
+        return jedis.ftSearch(indexName(), countQuery(filterQuery)).getTotalResults();
+    }
+
+    /**
+     * FT.SEARCH with LIMIT 0 0 for the filter, to be sent in a pipeline.
+     */
+    public Query countQuery(String filterQuery) {
+        return new Query(filterQuery).limit(0, 0).dialect(2);
+    }
+
+    /**
+     * Size of the vector index in megabytes, as reported by FT.INFO.
+     */
+    public double vectorIndexSizeMb() {
+        Object size = jedis.ftInfo(indexName()).get("vector_index_sz_mb");
+        return size == null ? 0 : Double.parseDouble(size.toString());
+    }
+
+    public float int8Scale() {
+        if (Float.isNaN(int8Scale)) {
+            String stored = jedis.get(int8ScaleKey());
+            int8Scale = stored == null ? 1 : Float.parseFloat(stored);
+        }
+        return int8Scale;
+    }
+
+    /**
+     * Quantizes the embeddings of movies written since the last {@link #quantizeEmbeddings()},
+     * with the scale stored then, so the existing int8 vectors stay comparable. Components
+     * beyond that scale's range are clamped.
+     */
+    private void quantizeMissingEmbeddings() {
+        if (jedis.get(int8ScaleKey()) == null) {
+            quantizeEmbeddings();
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        float scale = int8Scale();
+        Map<String, Object> batch = new HashMap<>();
+        long[] written = new long[1];
+        movieBulkOperations.forEachEmbeddingWithout(INT8_PATH, (id, embedding) -> {
+            batch.put(id, quantize(embedding, scale));
+            if (batch.size() == QUANTIZE_BATCH_SIZE) {
+                movieBulkOperations.setPathAll(INT8_PATH, batch);
+                written[0] += batch.size();
+                batch.clear();
+            }
+        });
+        movieBulkOperations.setPathAll(INT8_PATH, batch);
+        written[0] += batch.size();
+        logger.info("Quantized {} new embeddings to int8 with scale {} in {} ms",
+                written[0], scale, System.currentTimeMillis() - startTime);
+    }
+
+    private static int[] quantize(float[] embedding, float scale) {
+        int[] values = new int[embedding.length];
+        for (int i = 0; i < embedding.length; i++) {
+            values[i] = VectorPrecision.quantize(embedding[i], scale);
+        }
+        return values;
+    }
+
+    /**
+     * Writes {@code $.embeddedExtractInt8} next to every float32 embedding, using one scale
+     * for all vectors so that cosine distances between them are preserved.
+     */
+    private void quantizeEmbeddings() {
+        long startTime = System.currentTimeMillis();
+        float[] maxAbs = new float[1];
+        movieBulkOperations.forEachEmbedding((id, embedding) -> {
+            for (float value : embedding) {
+                maxAbs[0] = Math.max(maxAbs[0], Math.abs(value));
+            }
+        });
+        float scale = VectorPrecision.int8Scale(maxAbs[0]);
+
+        Map<String, Object> batch = new HashMap<>();
+        long[] written = new long[1];
+        movieBulkOperations.forEachEmbedding((id, embedding) -> {
+            batch.put(id, quantize(embedding, scale));
+            if (batch.size() == QUANTIZE_BATCH_SIZE) {
+                movieBulkOperations.setPathAll(INT8_PATH, batch);
+                written[0] += batch.size();
+                batch.clear();
+            }
+        });
+        movieBulkOperations.setPathAll(INT8_PATH, batch);
+        written[0] += batch.size();
+
+        jedis.set(int8ScaleKey(), Float.toString(scale));
+        int8Scale = scale;
+        logger.info("Quantized {} embeddings to int8 with scale {} in {} ms",
+                written[0], scale, System.currentTimeMillis() - startTime);
+    }
+
+    private List<SchemaField> schema() {
+        Map<String, Object> vectorAttributes = new LinkedHashMap<>();
+        vectorAttributes.put("TYPE", precision.name());
+        vectorAttributes.put("DIM", DIMENSION);
+        vectorAttributes.put("DISTANCE_METRIC", "COSINE");
+        vectorAttributes.put("M", hnswM);
+        vectorAttributes.put("EF_CONSTRUCTION", hnswEfConstruction);
+        String vectorPath = precision == VectorPrecision.INT8 ? INT8_PATH : FLOAT_PATH;
+
+        return List.of(
+                TagField.of("$.id").as("id"),
+                TextField.of("$.title").as("title"),
+                TextField.of("$.extract").as(TEXT_FIELD),
+                NumericField.of("$.year").as("year").sortable(),
+                TagField.of("$.cast[*]").as("cast"),
+                TagField.of("$.genres[*]").as("genres"),
+                new VectorField(vectorPath, VectorField.VectorAlgorithm.HNSW, vectorAttributes).as(VECTOR_FIELD)
+        );
+    }
+
+    /**
+     * @return the movie in a document returned with the {@code $} field
+     */
+    public Movie toMovie(Document document) {
+        try {
+            return objectMapper.readValue(document.getString("$"), Movie.class);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read movie " + document.getId(), e);
+        }
+    }
+
+    private static Map<String, String> properties(Object field) {
+        Map<String, String> properties = new HashMap<>();
+        if (field instanceof List<?> values) {
+            for (int i = 0; i + 1 < values.size(); i += 2) {
+                properties.put(String.valueOf(values.get(i)).toLowerCase(Locale.ROOT), String.valueOf(values.get(i + 1)));
+            }
+        }
+        return properties;
+    }
+
+    private static String indexParametersKey() {
+        return "vectors:" + Movie.class.getSimpleName() + ":index-parameters";
+    }
+
+    private static String int8ScaleKey() {
+        return "vectors:" + Movie.class.getSimpleName() + ":int8-scale";
+    }
+}
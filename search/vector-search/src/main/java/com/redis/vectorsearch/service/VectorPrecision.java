@@ -0,0 +1,95 @@
+package com.redis.vectorsearch.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Element types the extract embedding can be indexed with. The model produces float32;
+ * the other types trade precision for memory in the HNSW index.
+ * <p>
+ * {@link #INT8} is scalar-quantized by the application: every component is multiplied by
+ * a scale computed from the stored vectors and rounded, and candidates are rescored
+ * against the float32 vectors kept in the documents.
+ */
+public enum VectorPrecision {
+
+    FLOAT32(Float.BYTES),
+    FLOAT16(2),
+    BFLOAT16(2),
+    INT8(1);
+
+    private final int bytesPerComponent;
+
+    VectorPrecision(int bytesPerComponent) {
+        this.bytesPerComponent = bytesPerComponent;
+    }
+
+    public int bytesPerComponent() {
+        return bytesPerComponent;
+    }
+
+    /**
+     * @return the vector in the little-endian binary layout Redis expects for this type
+     */
+    public byte[] toBlob(float[] vector, float int8Scale) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * bytesPerComponent).order(ByteOrder.LITTLE_ENDIAN);
+        for (float value : vector) {
+            switch (this) {
+                case FLOAT32 -> buffer.putFloat(value);
+                case FLOAT16 -> buffer.putShort(Float.floatToFloat16(value));
+                case BFLOAT16 -> buffer.putShort(toBfloat16(value));
+                case INT8 -> buffer.put(quantize(value, int8Scale));
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @return the vector as Redis sees it once stored with this type, converted back to float
+     */
+    public float[] roundTrip(float[] vector, float int8Scale) {
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            float value = vector[i];
+            result[i] = switch (this) {
+                case FLOAT32 -> value;
+                case FLOAT16 -> Float.float16ToFloat(Float.floatToFloat16(value));
+                case BFLOAT16 -> Float.intBitsToFloat(toBfloat16(value) << 16);
+                case INT8 -> quantize(value, int8Scale) / int8Scale;
+            };
+        }
+        return result;
+    }
+
+    /**
+     * @return the scale mapping the largest absolute component to 127
+     */
+    public static float int8Scale(float maxAbsComponent) {
+        return maxAbsComponent == 0 ? 1 : Byte.MAX_VALUE / maxAbsComponent;
+    }
+
+    public static byte quantize(float value, float scale) {
+        return (byte) Math.clamp(Math.round(value * scale), -Byte.MAX_VALUE, Byte.MAX_VALUE);
+    }
+
+    /**
+     * Upper half of the float32 bits, rounded to nearest even.
+     */
+    private static short toBfloat16(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int rounded = bits + 0x7FFF + ((bits >>> 16) & 1);
+        return (short) (rounded >>> 16);
+    }
+
+    public static double cosineDistance(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0 || normB == 0 ? 1 : 1 - dot / Math.sqrt(normA * normB);
+    }
+}
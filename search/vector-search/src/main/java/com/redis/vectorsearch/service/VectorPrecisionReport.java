@@ -0,0 +1,202 @@
+package com.redis.vectorsearch.service;
+
+import com.redis.om.spring.tuple.Pair;
+import com.redis.vectorsearch.domain.Movie;
+import com.redis.vectorsearch.repository.MovieBulkOperations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures what each {@link VectorPrecision} costs in recall and saves in memory, on the
+ * embeddings actually stored.
+ * <p>
+ * A sample of stored vectors is used as queries. Their exact float32 nearest neighbours,
+ * found by brute force, are the ground truth. Each precision is then evaluated by brute force
+ * over the vectors as that type would store them, so the numbers isolate the precision loss
+ * from HNSW's own approximation. The live index is measured separately with real KNN queries.
+ */
+@Service
+public class VectorPrecisionReport {
+
+    private static final Logger logger = LoggerFactory.getLogger(VectorPrecisionReport.class);
+    private static final long SAMPLE_SEED = 42;
+
+    private final MovieBulkOperations movieBulkOperations;
+    private final VectorIndexService vectorIndexService;
+    private final int rescoreOversampling;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public VectorPrecisionReport(
+            MovieBulkOperations movieBulkOperations,
+            VectorIndexService vectorIndexService,
+            @Value("${vectors.int8.rescore-oversampling:4}") int rescoreOversampling
+    ) {
+        this.movieBulkOperations = movieBulkOperations;
+        this.vectorIndexService = vectorIndexService;
+        this.rescoreOversampling = rescoreOversampling;
+    }
+
+    /**
+     * Brute force over every stored vector is expensive, so only one report runs at a time.
+     *
+     * @throws IllegalStateException when no embeddings are stored or another report is running
+     */
+    public Map<String, Object> report(int sampleSize, int k) {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A precision report is already running");
+        }
+        try {
+            return buildReport(sampleSize, k);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private Map<String, Object> buildReport(int sampleSize, int k) {
+        long startTime = System.currentTimeMillis();
+        List<String> ids = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        movieBulkOperations.forEachEmbedding((id, embedding) -> {
+            ids.add(id);
+            vectors.add(embedding);
+        });
+        if (vectors.isEmpty()) {
+            throw new IllegalStateException("No embeddings stored yet");
+        }
+
+        List<Integer> sample = new ArrayList<>();
+        for (int i = 0; i < vectors.size(); i++) {
+            sample.add(i);
+        }
+        Collections.shuffle(sample, new Random(SAMPLE_SEED));
+        sample = sample.subList(0, Math.min(sampleSize, sample.size()));
+
+        List<Set<Integer>> exact = new ArrayList<>();
+        for (int query : sample) {
+            exact.add(new HashSet<>(nearest(vectors.get(query), vectors, query, k)));
+        }
+
+        float maxAbs = 0;
+        for (float[] vector : vectors) {
+            for (float value : vector) {
+                maxAbs = Math.max(maxAbs, Math.abs(value));
+            }
+        }
+        float int8Scale = VectorPrecision.int8Scale(maxAbs);
+        int dimension = vectors.getFirst().length;
+
+        List<Map<String, Object>> precisions = new ArrayList<>();
+        for (VectorPrecision precision : VectorPrecision.values()) {
+            List<float[]> stored = vectors.stream().map(vector -> precision.roundTrip(vector, int8Scale)).toList();
+            double recall = 0;
+            double rescoredRecall = 0;
+            for (int i = 0; i < sample.size(); i++) {
+                int query = sample.get(i);
+                float[] queryVector = precision.roundTrip(vectors.get(query), int8Scale);
+                recall += overlap(nearest(queryVector, stored, query, k), exact.get(i), k);
+                if (precision == VectorPrecision.INT8) {
+                    List<Integer> candidates = nearest(queryVector, stored, query, k * rescoreOversampling);
+                    candidates.sort(Comparator.comparingDouble(
+                            candidate -> VectorPrecision.cosineDistance(vectors.get(query), vectors.get(candidate))));
+                    rescoredRecall += overlap(candidates.subList(0, Math.min(k, candidates.size())), exact.get(i), k);
+                }
+            }
+
+            long bytesPerVector = (long) dimension * precision.bytesPerComponent();
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("precision", precision);
+            row.put("bytesPerVector", bytesPerVector);
+            row.put("vectorDataMb", bytesPerVector * vectors.size() / 1_000_000.0);
+            row.put("compression", (double) Float.BYTES / precision.bytesPerComponent());
+            row.put("recallAtK", recall / sample.size());
+            if (precision == VectorPrecision.INT8) {
+                row.put("recallAtKRescored", rescoredRecall / sample.size());
+                row.put("rescoreOversampling", rescoreOversampling);
+            }
+            precisions.add(row);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("vectors", vectors.size());
+        result.put("dimension", dimension);
+        result.put("sampleSize", sample.size());
+        result.put("k", k);
+        result.put("precisions", precisions);
+        result.put("liveIndex", liveIndex(ids, vectors, sample, exact, k));
+        result.put("reportTime", System.currentTimeMillis() - startTime);
+        logger.info("Built vector precision report over {} vectors in {} ms", vectors.size(), System.currentTimeMillis() - startTime);
+        return result;
+    }
+
+    /**
+     * Recall of the live HNSW index at its current precision, querying it with the same sample.
+     */
+    private Map<String, Object> liveIndex(
+            List<String> ids,
+            List<float[]> vectors,
+            List<Integer> sample,
+            List<Set<Integer>> exact,
+            int k
+    ) {
+        Map<String, Integer> positionById = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            positionById.put(ids.get(i), i);
+        }
+
+        double recall = 0;
+        for (int i = 0; i < sample.size(); i++) {
+            int query = sample.get(i);
+            List<Integer> found = new ArrayList<>();
+            // One extra neighbour, since the query vector finds its own movie
+            for (Pair<Movie, Double> match : vectorIndexService.knn("*", vectors.get(query), k + 1)) {
+                Integer position = positionById.get(match.getFirst().getId());
+                if (position != null && position != query) {
+                    found.add(position);
+                }
+            }
+            recall += overlap(found.subList(0, Math.min(k, found.size())), exact.get(i), k);
+        }
+
+        Map<String, Object> live = new LinkedHashMap<>();
+        live.put("precision", vectorIndexService.precision());
+        live.put("indexedType", vectorIndexService.indexedVectorType());
+        live.put("vectorIndexSizeMb", vectorIndexService.vectorIndexSizeMb());
+        live.put("recallAtK", recall / sample.size());
+        return live;
+    }
+
+    /**
+     * Brute-force nearest neighbours by cosine distance, leaving out the query's own vector.
+     */
+    private static List<Integer> nearest(float[] query, List<float[]> vectors, int exclude, int k) {
+        PriorityQueue<double[]> farthestFirst = new PriorityQueue<>(Comparator.comparingDouble((double[] entry) -> entry[0]).reversed());
+        for (int i = 0; i < vectors.size(); i++) {
+            if (i == exclude) {
+                continue;
+            }
+            double distance = VectorPrecision.cosineDistance(query, vectors.get(i));
+            if (farthestFirst.size() < k) {
+                farthestFirst.add(new double[]{distance, i});
+            } else if (distance < farthestFirst.peek()[0]) {
+                farthestFirst.poll();
+                farthestFirst.add(new double[]{distance, i});
+            }
+        }
+        List<Integer> nearest = new ArrayList<>(farthestFirst.size());
+        while (!farthestFirst.isEmpty()) {
+            nearest.add((int) farthestFirst.poll()[1]);
+        }
+        Collections.reverse(nearest);
+        return nearest;
+    }
+
+    private static double overlap(List<Integer> found, Set<Integer> expected, int k) {
+        long hits = found.stream().filter(expected::contains).count();
+        return (double) hits / Math.max(1, Math.min(k, expected.size()));
+    }
+}
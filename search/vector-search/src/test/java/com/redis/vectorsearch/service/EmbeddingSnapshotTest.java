@@ -0,0 +1,163 @@
+package com.redis.vectorsearch.service;
+
+import com.redis.om.spring.vectorize.Embedder;
+import com.redis.vectorsearch.repository.MovieBulkOperations;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EmbeddingSnapshotTest {
+
+    private static final float[] FINGERPRINT = {0.6f, 0.8f, 0f};
+    private static final UUID FIRST = UUID.fromString("00000000-0000-0001-0000-000000000002");
+    private static final UUID SECOND = UUID.fromString("3f2504e0-4f89-11d3-9a0c-0305e82c3301");
+
+    @TempDir
+    Path directory;
+
+    private final Embedder embedder = mock(Embedder.class);
+    private final MovieBulkOperations movieBulkOperations = mock(MovieBulkOperations.class);
+
+    @Test
+    void exportedVectorsOpenUnderTheirIds() throws Exception {
+        probeEmbeds(FINGERPRINT);
+        storedEmbeddings();
+        EmbeddingSnapshot snapshot = snapshot();
+
+        assertThat(snapshot.export()).isEqualTo(2);
+
+        EmbeddingSnapshot.Vectors vectors = snapshot.open().orElseThrow();
+        assertThat(vectors.size()).isEqualTo(2);
+        assertThat(vectors.get(FIRST.toString())).containsExactly(0.1f, 0.2f, 0.3f);
+        assertThat(vectors.get(SECOND.toString())).containsExactly(-1f, 0f, 1f);
+        assertThat(vectors.get("not-stored")).isNull();
+    }
+
+    @Test
+    void fileStartsWithTheLittleEndianHeaderAndFingerprint() throws Exception {
+        probeEmbeds(FINGERPRINT);
+        storedEmbeddings();
+        snapshot().export();
+
+        ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(snapshotPath())).order(ByteOrder.LITTLE_ENDIAN);
+        assertThat(file.getInt()).isEqualTo(0x4D564543);
+        assertThat(file.getInt()).isEqualTo(1);
+        assertThat(file.getInt()).isEqualTo(3);
+        assertThat(file.getInt()).isEqualTo(2);
+        assertThat(new float[]{file.getFloat(), file.getFloat(), file.getFloat()}).containsExactly(FINGERPRINT);
+        assertThat(new UUID(file.getLong(), file.getLong())).isEqualTo(FIRST);
+        assertThat(new float[]{file.getFloat(), file.getFloat(), file.getFloat()}).containsExactly(0.1f, 0.2f, 0.3f);
+        assertThat(new UUID(file.getLong(), file.getLong())).isEqualTo(SECOND);
+        assertThat(new float[]{file.getFloat(), file.getFloat(), file.getFloat()}).containsExactly(-1f, 0f, 1f);
+        assertThat(file.hasRemaining()).isFalse();
+    }
+
+    @Test
+    void recordsWithoutAUuidOrOfAnotherDimensionAreLeftOut() throws Exception {
+        probeEmbeds(FINGERPRINT);
+        storedEmbeddings(consumer -> {
+            consumer.accept(FIRST.toString(), new float[]{0.1f, 0.2f, 0.3f});
+            consumer.accept("tt0078748", new float[]{0.1f, 0.2f, 0.3f});
+            consumer.accept(SECOND.toString(), new float[]{0.1f, 0.2f});
+        });
+        EmbeddingSnapshot snapshot = snapshot();
+
+        assertThat(snapshot.export()).isEqualTo(1);
+        assertThat(snapshot.open().orElseThrow().get(FIRST.toString())).containsExactly(0.1f, 0.2f, 0.3f);
+    }
+
+    @Test
+    void snapshotOfAnotherModelIsIgnored() throws Exception {
+        probeEmbeds(FINGERPRINT);
+        storedEmbeddings();
+        EmbeddingSnapshot snapshot = snapshot();
+        snapshot.export();
+
+        probeEmbeds(new float[]{0.8f, -0.6f, 0f});
+
+        assertThat(snapshot.open()).isEmpty();
+    }
+
+    @Test
+    void snapshotOfAnotherDimensionIsIgnored() throws Exception {
+        probeEmbeds(FINGERPRINT);
+        storedEmbeddings();
+        EmbeddingSnapshot snapshot = snapshot();
+        snapshot.export();
+
+        probeEmbeds(new float[]{0.6f, 0.8f, 0f, 0f});
+
+        assertThat(snapshot.open()).isEmpty();
+    }
+
+    @Test
+    void fileWithoutTheMagicIsIgnored() throws Exception {
+        probeEmbeds(FINGERPRINT);
+        Files.write(snapshotPath(), new byte[64]);
+
+        assertThat(snapshot().exists()).isTrue();
+        assertThat(snapshot().open()).isEmpty();
+    }
+
+    @Test
+    void fileShorterThanItsHeaderCountIsIgnored() throws Exception {
+        probeEmbeds(FINGERPRINT);
+        storedEmbeddings();
+        EmbeddingSnapshot snapshot = snapshot();
+        snapshot.export();
+
+        byte[] file = Files.readAllBytes(snapshotPath());
+        Files.write(snapshotPath(), Arrays.copyOf(file, file.length - Float.BYTES));
+
+        assertThat(snapshot.open()).isEmpty();
+    }
+
+    @Test
+    void missingFileOpensEmpty() {
+        assertThat(snapshot().exists()).isFalse();
+        assertThat(snapshot().open()).isEmpty();
+    }
+
+    private EmbeddingSnapshot snapshot() {
+        return new EmbeddingSnapshot(embedder, movieBulkOperations, snapshotPath().toString());
+    }
+
+    private Path snapshotPath() {
+        return directory.resolve("embeddings.snapshot");
+    }
+
+    private void probeEmbeds(float[] fingerprint) {
+        when(embedder.getTextEmbeddingsAsFloats(anyList(), any())).thenReturn(List.of(fingerprint));
+    }
+
+    private void storedEmbeddings() {
+        storedEmbeddings(consumer -> {
+            consumer.accept(FIRST.toString(), new float[]{0.1f, 0.2f, 0.3f});
+            consumer.accept(SECOND.toString(), new float[]{-1f, 0f, 1f});
+        });
+    }
+
+    private void storedEmbeddings(Consumer<BiConsumer<String, float[]>> movies) {
+        doAnswer(invocation -> {
+            BiConsumer<String, float[]> consumer = invocation.getArgument(0);
+            movies.accept(consumer);
+            return null;
+        }).when(movieBulkOperations).forEachEmbedding(any());
+    }
+}
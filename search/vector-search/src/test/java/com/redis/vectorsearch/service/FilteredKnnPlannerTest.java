@@ -0,0 +1,104 @@
+package com.redis.vectorsearch.service;
+
+import com.redis.om.spring.tuple.Pair;
+import com.redis.om.spring.tuple.Tuples;
+import com.redis.vectorsearch.domain.Movie;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FilteredKnnPlannerTest {
+
+    private static final String FILTER = "@genres:{Drama}";
+    private static final float[] VECTOR = new float[VectorIndexService.DIMENSION];
+    private static final long BRUTE_FORCE_MAX_MATCHES = 2000;
+
+    private final VectorIndexService vectorIndexService = mock(VectorIndexService.class);
+    private final FilteredKnnPlanner planner = new FilteredKnnPlanner(vectorIndexService, BRUTE_FORCE_MAX_MATCHES);
+
+    @Test
+    void noMatchesSkipsTheVectorSearch() {
+        when(vectorIndexService.count(FILTER)).thenReturn(0L);
+
+        FilteredKnnPlanner.Result result = planner.knn(FILTER, VECTOR, 10);
+
+        assertThat(result.strategy()).isEqualTo(FilteredKnnPlanner.Strategy.EMPTY);
+        assertThat(result.matches()).isEmpty();
+        verify(vectorIndexService, never()).knn(anyString(), any(), anyInt(), anyBoolean());
+    }
+
+    @Test
+    void upToTheThresholdRunsBruteForce() {
+        when(vectorIndexService.count(FILTER)).thenReturn(BRUTE_FORCE_MAX_MATCHES);
+        when(vectorIndexService.knn(FILTER, VECTOR, 10, true)).thenReturn(matches(10));
+
+        FilteredKnnPlanner.Result result = planner.knn(FILTER, VECTOR, 10);
+
+        assertThat(result.strategy()).isEqualTo(FilteredKnnPlanner.Strategy.BRUTE_FORCE);
+        assertThat(result.filterMatches()).isEqualTo(BRUTE_FORCE_MAX_MATCHES);
+        assertThat(result.matches()).hasSize(10);
+        verify(vectorIndexService, never()).knn(FILTER, VECTOR, 10, false);
+    }
+
+    @Test
+    void aboveTheThresholdSearchesTheGraph() {
+        when(vectorIndexService.count(FILTER)).thenReturn(BRUTE_FORCE_MAX_MATCHES + 1);
+        when(vectorIndexService.knn(FILTER, VECTOR, 10, false)).thenReturn(matches(10));
+
+        FilteredKnnPlanner.Result result = planner.knn(FILTER, VECTOR, 10);
+
+        assertThat(result.strategy()).isEqualTo(FilteredKnnPlanner.Strategy.HNSW);
+        assertThat(result.matches()).hasSize(10);
+        verify(vectorIndexService, never()).knn(FILTER, VECTOR, 10, true);
+    }
+
+    @Test
+    void shortGraphResultsAreRepeatedByBruteForce() {
+        when(vectorIndexService.count(FILTER)).thenReturn(BRUTE_FORCE_MAX_MATCHES + 1);
+        when(vectorIndexService.knn(FILTER, VECTOR, 10, false)).thenReturn(matches(7));
+        when(vectorIndexService.knn(FILTER, VECTOR, 10, true)).thenReturn(matches(10));
+
+        FilteredKnnPlanner.Result result = planner.knn(FILTER, VECTOR, 10);
+
+        assertThat(result.strategy()).isEqualTo(FilteredKnnPlanner.Strategy.HNSW_THEN_BRUTE_FORCE);
+        assertThat(result.matches()).hasSize(10);
+    }
+
+    @Test
+    void planMatchesTheThresholds() {
+        assertThat(planner.plan(0)).isEqualTo(FilteredKnnPlanner.Strategy.EMPTY);
+        assertThat(planner.plan(1)).isEqualTo(FilteredKnnPlanner.Strategy.BRUTE_FORCE);
+        assertThat(planner.plan(BRUTE_FORCE_MAX_MATCHES)).isEqualTo(FilteredKnnPlanner.Strategy.BRUTE_FORCE);
+        assertThat(planner.plan(BRUTE_FORCE_MAX_MATCHES + 1)).isEqualTo(FilteredKnnPlanner.Strategy.HNSW);
+    }
+
+    @Test
+    void bruteForceIsOnlyNeededWhenFewerThanMinOfKAndMatchesCameBack() {
+        assertThat(planner.needsBruteForce(9, 10, 5000)).isTrue();
+        assertThat(planner.needsBruteForce(10, 10, 5000)).isFalse();
+        // Fewer movies match than were asked for, so all of them is enough
+        assertThat(planner.needsBruteForce(3, 10, 3)).isFalse();
+        assertThat(planner.needsBruteForce(2, 10, 3)).isTrue();
+    }
+
+    private static List<Pair<Movie, Double>> matches(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> {
+                    Movie movie = new Movie();
+                    movie.setId("movie-" + i);
+                    return Tuples.of(movie, i / 100.0);
+                })
+                .toList();
+    }
+}
@@ -0,0 +1,140 @@
+package com.redis.vectorsearch.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redis.om.spring.indexing.RediSearchIndexer;
+import com.redis.om.spring.tuple.Pair;
+import com.redis.vectorsearch.domain.Movie;
+import com.redis.vectorsearch.repository.MovieBulkOperations;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.search.Document;
+import redis.clients.jedis.search.SearchResult;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class Int8QuantizationTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void scaleMapsTheLargestComponentTo127() {
+        float scale = VectorPrecision.int8Scale(0.5f);
+
+        assertThat(VectorPrecision.quantize(0.5f, scale)).isEqualTo((byte) 127);
+        assertThat(VectorPrecision.quantize(-0.5f, scale)).isEqualTo((byte) -127);
+        assertThat(VectorPrecision.quantize(0.25f, scale)).isEqualTo((byte) 64);
+        assertThat(VectorPrecision.int8Scale(0)).isEqualTo(1f);
+    }
+
+    @Test
+    void componentsBeyondTheScaleAreClamped() {
+        float scale = VectorPrecision.int8Scale(0.5f);
+
+        // Vectors written after the scale was fixed can exceed its range
+        assertThat(VectorPrecision.quantize(0.9f, scale)).isEqualTo((byte) 127);
+        assertThat(VectorPrecision.quantize(-0.9f, scale)).isEqualTo((byte) -127);
+    }
+
+    @Test
+    void roundTripStaysWithinHalfAStep() {
+        float[] vector = {0.5f, -0.31f, 0.007f, 0f, -0.5f, 0.123f};
+        float scale = VectorPrecision.int8Scale(0.5f);
+
+        float[] roundTrip = VectorPrecision.INT8.roundTrip(vector, scale);
+
+        for (int i = 0; i < vector.length; i++) {
+            assertThat(roundTrip[i]).isCloseTo(vector[i], within(0.5f / scale + 1e-6f));
+        }
+    }
+
+    @Test
+    void blobHasOneBytePerComponent() {
+        float[] vector = {0.5f, -0.25f, 0f};
+        float scale = VectorPrecision.int8Scale(0.5f);
+
+        byte[] blob = VectorPrecision.INT8.toBlob(vector, scale);
+
+        assertThat(blob).containsExactly(127, -63, 0);
+    }
+
+    @Test
+    void int8CandidatesAreRescoredAgainstTheFloatEmbeddings() throws Exception {
+        VectorIndexService service = vectorIndexService(VectorPrecision.INT8);
+        float[] query = {1, 0, 0};
+        // The int8 distances rank "far" first, its float32 embedding is actually further away
+        SearchResult result = searchResult(
+                document(movie("far", new float[]{0, 1, 0}), "0.01"),
+                document(movie("near", new float[]{1, 0.1f, 0}), "0.2"),
+                document(movie("middle", new float[]{1, 1, 0}), "0.3")
+        );
+
+        List<Pair<Movie, Double>> matches = service.knnMatches(result, query, 2);
+
+        assertThat(matches).extracting(match -> match.getFirst().getId()).containsExactly("near", "middle");
+        assertThat(matches.get(0).getSecond())
+                .isCloseTo(VectorPrecision.cosineDistance(query, new float[]{1, 0.1f, 0}), within(1e-9));
+    }
+
+    @Test
+    void float32KeepsTheDistancesRedisReturned() throws Exception {
+        VectorIndexService service = vectorIndexService(VectorPrecision.FLOAT32);
+        SearchResult result = searchResult(
+                document(movie("first", new float[]{0, 1, 0}), "0.01"),
+                document(movie("second", new float[]{1, 0, 0}), "0.2")
+        );
+
+        List<Pair<Movie, Double>> matches = service.knnMatches(result, new float[]{1, 0, 0}, 2);
+
+        assertThat(matches).extracting(match -> match.getFirst().getId()).containsExactly("first", "second");
+        assertThat(matches).extracting(Pair::getSecond).containsExactly(0.01, 0.2);
+    }
+
+    private VectorIndexService vectorIndexService(VectorPrecision precision) {
+        return new VectorIndexService(
+                mock(JedisPooled.class),
+                mock(RediSearchIndexer.class),
+                mock(MovieBulkOperations.class),
+                objectMapper,
+                mock(EmbeddingStatusService.class),
+                precision,
+                4,
+                16,
+                200,
+                10,
+                600000
+        );
+    }
+
+    private static Movie movie(String id, float[] embedding) {
+        Movie movie = new Movie();
+        movie.setId(id);
+        movie.setTitle(id);
+        movie.setEmbeddedExtract(embedding);
+        return movie;
+    }
+
+    private Document document(Movie movie, String score) throws Exception {
+        Document document = mock(Document.class);
+        when(document.getId()).thenReturn("Movie:" + movie.getId());
+        when(document.getString("$")).thenReturn(objectMapper.writeValueAsString(Map.of(
+                "id", movie.getId(),
+                "title", movie.getTitle(),
+                "embeddedExtract", movie.getEmbeddedExtract()
+        )));
+        when(document.getString("__embeddedExtract_score")).thenReturn(score);
+        return document;
+    }
+
+    private static SearchResult searchResult(Document... documents) {
+        SearchResult result = mock(SearchResult.class);
+        when(result.getDocuments()).thenReturn(List.of(documents));
+        when(result.getTotalResults()).thenReturn((long) documents.length);
+        return result;
+    }
+}
@@ -0,0 +1,94 @@
+package com.redis.vectorsearch.service;
+
+import com.redis.om.spring.tuple.Pair;
+import com.redis.om.spring.tuple.Tuples;
+import com.redis.vectorsearch.domain.Movie;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class SearchServiceFusionTest {
+
+    private static final int RRF_RANK_CONSTANT = 60;
+
+    private final Movie alien = movie("alien");
+    private final Movie blade = movie("blade");
+    private final Movie contact = movie("contact");
+
+    @Test
+    void rrfAddsReciprocalRanksFromBothLists() {
+        List<Pair<Movie, Double>> fused = SearchService.fuse(
+                List.of(Tuples.of(alien, 12.0), Tuples.of(blade, 3.0)),
+                List.of(Tuples.of(blade, 0.1), Tuples.of(contact, 0.2)),
+                SearchService.Fusion.RRF, 0.5, RRF_RANK_CONSTANT, 10);
+
+        assertThat(fused).extracting(Pair::getFirst).containsExactly(blade, alien, contact);
+        assertThat(fused.get(0).getSecond()).isCloseTo(1.0 / 62 + 1.0 / 61, within(1e-12));
+        assertThat(fused.get(1).getSecond()).isCloseTo(1.0 / 61, within(1e-12));
+        assertThat(fused.get(2).getSecond()).isCloseTo(1.0 / 62, within(1e-12));
+    }
+
+    @Test
+    void rrfIgnoresTheRawScores() {
+        List<Pair<Movie, Double>> fused = SearchService.fuse(
+                List.of(Tuples.of(alien, 1000.0), Tuples.of(blade, 0.001)),
+                List.of(),
+                SearchService.Fusion.RRF, 0.5, RRF_RANK_CONSTANT, 10);
+
+        assertThat(fused.get(0).getSecond() - fused.get(1).getSecond())
+                .isCloseTo(1.0 / 61 - 1.0 / 62, within(1e-12));
+    }
+
+    @Test
+    void weightedBlendsRelativeTextScoreWithCosineSimilarity() {
+        List<Pair<Movie, Double>> fused = SearchService.fuse(
+                List.of(Tuples.of(alien, 4.0), Tuples.of(blade, 2.0)),
+                List.of(Tuples.of(blade, 0.2), Tuples.of(contact, 0.1)),
+                SearchService.Fusion.WEIGHTED, 0.5, RRF_RANK_CONSTANT, 10);
+
+        assertThat(fused).extracting(Pair::getFirst).containsExactly(blade, alien, contact);
+        assertThat(fused.get(0).getSecond()).isCloseTo(0.5 * 0.5 + 0.5 * 0.8, within(1e-12));
+        assertThat(fused.get(1).getSecond()).isCloseTo(0.5 * 1.0, within(1e-12));
+        assertThat(fused.get(2).getSecond()).isCloseTo(0.5 * 0.9, within(1e-12));
+    }
+
+    @Test
+    void weightedTextWeightOfOneOnlyRanksByText() {
+        List<Pair<Movie, Double>> fused = SearchService.fuse(
+                List.of(Tuples.of(blade, 1.0), Tuples.of(alien, 2.0)),
+                List.of(Tuples.of(contact, 0.0)),
+                SearchService.Fusion.WEIGHTED, 1.0, RRF_RANK_CONSTANT, 2);
+
+        assertThat(fused).extracting(Pair::getFirst).containsExactly(alien, blade);
+    }
+
+    @Test
+    void weightedClampsDistancesBeyondOneToZeroSimilarity() {
+        List<Pair<Movie, Double>> fused = SearchService.fuse(
+                List.of(),
+                List.of(Tuples.of(alien, 1.5)),
+                SearchService.Fusion.WEIGHTED, 0.5, RRF_RANK_CONSTANT, 10);
+
+        assertThat(fused).singleElement().satisfies(match -> assertThat(match.getSecond()).isZero());
+    }
+
+    @Test
+    void keepsOnlyTheBestK() {
+        List<Pair<Movie, Double>> fused = SearchService.fuse(
+                List.of(Tuples.of(alien, 3.0), Tuples.of(blade, 2.0), Tuples.of(contact, 1.0)),
+                List.of(),
+                SearchService.Fusion.RRF, 0.5, RRF_RANK_CONSTANT, 1);
+
+        assertThat(fused).extracting(Pair::getFirst).containsExactly(alien);
+    }
+
+    private static Movie movie(String id) {
+        Movie movie = new Movie();
+        movie.setId(id);
+        movie.setTitle(id);
+        return movie;
+    }
+}